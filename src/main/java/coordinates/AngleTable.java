@@ -0,0 +1,104 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package coordinates;
+
+/**
+ * Lookup table of the local model quantities for integer pixel offsets.
+ *
+ * The local line estimation only needs, for each neighbor, the angle of the
+ * line going through the neighbor and the central point, and the sine and
+ * cosine of the doubled angle (for the circular mean). Since neighbors are
+ * within a window of bounded size, these quantities are computed once for
+ * all offsets of the window, and looked up instead of being recomputed.
+ *
+ * The table is immutable once built and can be shared between threads.
+ *
+ * @author julien.pontabry
+ */
+public class AngleTable {
+	/** Half size of the window of offsets. */
+	protected final int halfSize;
+
+	/** Number of offsets on each axis. */
+	protected final int width;
+
+	/** Angles of the lines going through the offsets and the center. */
+	public final double[] theta;
+
+	/** Sine of the doubled angles (shifted by pi). */
+	public final double[] alphaSin;
+
+	/** Cosine of the doubled angles (shifted by pi). */
+	public final double[] alphaCos;
+
+	/**
+	 * Constructor.
+	 * @param halfSize Half size of the window (offsets are in [-halfSize,halfSize] on both axes).
+	 */
+	public AngleTable(int halfSize) {
+		if (halfSize < 0)
+			throw new IllegalArgumentException("Half size must be positive!");
+
+		this.halfSize = halfSize;
+		this.width = 2*halfSize + 1;
+		this.theta = new double[this.width * this.width];
+		this.alphaSin = new double[this.width * this.width];
+		this.alphaCos = new double[this.width * this.width];
+
+		for (int b = -halfSize; b <= halfSize; b++) {
+			for (int a = -halfSize; a <= halfSize; a++) {
+				int index = this.getIndex(a, b);
+				double alpha;
+
+				this.theta[index] = ImagePoint.estimatePairwiseAngle(a, b);
+				alpha = 2.*this.theta[index] + Math.PI;
+				this.alphaSin[index] = Math.sin(alpha);
+				this.alphaCos[index] = Math.cos(alpha);
+			}
+		}
+	}
+
+	/**
+	 * Get the half size of the window.
+	 * @return Half size of the window of offsets.
+	 */
+	public int getHalfSize() {
+		return this.halfSize;
+	}
+
+	/**
+	 * Check if an offset is in the table.
+	 * @param a Offset on the X axis.
+	 * @param b Offset on the Y axis.
+	 * @return True if the offset is within the window, false otherwise.
+	 */
+	public boolean contains(int a, int b) {
+		return -this.halfSize <= a && a <= this.halfSize && -this.halfSize <= b && b <= this.halfSize;
+	}
+
+	/**
+	 * Get the position of an offset in the table.
+	 * @param a Offset on the X axis (within the window).
+	 * @param b Offset on the Y axis (within the window).
+	 * @return Position of the offset in the arrays of the table.
+	 */
+	public int getIndex(int a, int b) {
+		return (b + this.halfSize) * this.width + (a + this.halfSize);
+	}
+}
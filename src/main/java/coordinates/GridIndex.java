@@ -0,0 +1,233 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package coordinates;
+
+/**
+ * Uniform grid index over a set of 2D points.
+ *
+ * The bounding box of the points is cut into cells of fixed size and the
+ * positions of the points are bucketed by cell. When the cell size is at
+ * least the radius of a neighborhood query, all the neighbors of a point
+ * lie in the 3x3 cells surrounding the cell of that point.
+ *
+ * The index is immutable once built and can be queried concurrently.
+ *
+ * @author julien.pontabry
+ */
+public class GridIndex {
+	/** Maximal number of cells per indexed point (cells are enlarged above). */
+	protected static final int maxCellsPerPoint = 4;
+
+	/** Lower bound of the first axis. */
+	protected double minX;
+
+	/** Lower bound of the second axis. */
+	protected double minY;
+
+	/** Size of cells on first axis. */
+	protected double cellWidth;
+
+	/** Size of cells on second axis. */
+	protected double cellHeight;
+
+	/** Number of cells on first axis. */
+	protected int columns;
+
+	/** Number of cells on second axis. */
+	protected int rows;
+
+	/** Start position of each cell in indices array (one more element for the end of last cell). */
+	protected int[] cellStarts;
+
+	/** Positions of the points in the input arrays, sorted by cell. */
+	protected int[] indices;
+
+	/**
+	 * Build the index over points in image space.
+	 * @param points Input points.
+	 * @param cellSize Minimal size of the cells on both axes.
+	 */
+	public GridIndex(ImagePointArray points, double cellSize) {
+		double[] x = new double[points.size];
+		double[] y = new double[points.size];
+
+		for (int i = 0; i < points.size; i++) {
+			x[i] = points.x[i];
+			y[i] = points.y[i];
+		}
+
+		this.build(x, y, points.size, cellSize, cellSize);
+	}
+
+	/**
+	 * Build the index over points given by their coordinates.
+	 * @param x Coordinates of points on the first axis.
+	 * @param y Coordinates of points on the second axis.
+	 * @param size Number of points (first elements of coordinates arrays).
+	 * @param cellWidth Minimal size of the cells on the first axis.
+	 * @param cellHeight Minimal size of the cells on the second axis.
+	 */
+	public GridIndex(double[] x, double[] y, int size, double cellWidth, double cellHeight) {
+		this.build(x, y, size, cellWidth, cellHeight);
+	}
+
+	/**
+	 * Compute the grid layout and bucket the points (counting sort by cell).
+	 * @param x Coordinates of points on the first axis.
+	 * @param y Coordinates of points on the second axis.
+	 * @param size Number of points.
+	 * @param cellWidth Minimal size of the cells on the first axis.
+	 * @param cellHeight Minimal size of the cells on the second axis.
+	 */
+	private void build(double[] x, double[] y, int size, double cellWidth, double cellHeight) {
+		if (!(cellWidth > 0.0) || !(cellHeight > 0.0))
+			throw new IllegalArgumentException("Cell size must be greater than zero!");
+		
+		// Compute bounding box
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < size; i++) {
+			minX = Math.min(minX, x[i]); maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]); maxY = Math.max(maxY, y[i]);
+		}
+
+		if (size == 0) {
+			minX = maxX = minY = maxY = 0.0;
+		}
+
+		// Setup cells layout (enlarge the cells when there are too many of them,
+		// which keeps the 3x3 neighborhood property)
+		double extentX = maxX - minX, extentY = maxY - minY;
+		double maxCells = (double)GridIndex.maxCellsPerPoint * Math.max(size, 1);
+
+		while ((Math.floor(extentX / cellWidth) + 1) * (Math.floor(extentY / cellHeight) + 1) > maxCells) {
+			cellWidth  *= 2.0;
+			cellHeight *= 2.0;
+		}
+
+		this.minX = minX;
+		this.minY = minY;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+		this.columns = (int)Math.floor(extentX / cellWidth) + 1;
+		this.rows = (int)Math.floor(extentY / cellHeight) + 1;
+
+		// Count points per cell
+		int[] cells = new int[size];
+		this.cellStarts = new int[this.columns * this.rows + 1];
+
+		for (int i = 0; i < size; i++) {
+			cells[i] = this.getRow(y[i]) * this.columns + this.getColumn(x[i]);
+			this.cellStarts[cells[i] + 1]++;
+		}
+
+		for (int c = 0; c < this.columns * this.rows; c++)
+			this.cellStarts[c + 1] += this.cellStarts[c];
+
+		// Fill indices by cell (stable, so indices are increasing within a cell)
+		int[] positions = new int[this.columns * this.rows];
+		System.arraycopy(this.cellStarts, 0, positions, 0, positions.length);
+		this.indices = new int[size];
+
+		for (int i = 0; i < size; i++)
+			this.indices[positions[cells[i]]++] = i;
+	}
+
+	/**
+	 * Get the column of the cell containing a coordinate (clamped to the grid).
+	 * @param x Coordinate on the first axis.
+	 * @return Column of the cell.
+	 */
+	public int getColumn(double x) {
+		return Math.min(Math.max((int)Math.floor((x - this.minX) / this.cellWidth), 0), this.columns - 1);
+	}
+
+	/**
+	 * Get the row of the cell containing a coordinate (clamped to the grid).
+	 * @param y Coordinate on the second axis.
+	 * @return Row of the cell.
+	 */
+	public int getRow(double y) {
+		return Math.min(Math.max((int)Math.floor((y - this.minY) / this.cellHeight), 0), this.rows - 1);
+	}
+
+	/**
+	 * Get the number of cells on the first axis.
+	 * @return Number of columns.
+	 */
+	public int getColumns() {
+		return this.columns;
+	}
+
+	/**
+	 * Get the number of cells on the second axis.
+	 * @return Number of rows.
+	 */
+	public int getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * Get the actual size of the cells on the first axis.
+	 * @return Width of cells.
+	 */
+	public double getCellWidth() {
+		return this.cellWidth;
+	}
+
+	/**
+	 * Get the actual size of the cells on the second axis.
+	 * @return Height of cells.
+	 */
+	public double getCellHeight() {
+		return this.cellHeight;
+	}
+
+	/**
+	 * Get the first position (in sorted order) of the points of a cell.
+	 * @param column Column of the cell.
+	 * @param row Row of the cell.
+	 * @return First position (inclusive).
+	 * @see getIndex
+	 */
+	public int getCellStart(int column, int row) {
+		return this.cellStarts[row * this.columns + column];
+	}
+
+	/**
+	 * Get the last position (in sorted order) of the points of a cell.
+	 * @param column Column of the cell.
+	 * @param row Row of the cell.
+	 * @return Last position (exclusive).
+	 * @see getIndex
+	 */
+	public int getCellEnd(int column, int row) {
+		return this.cellStarts[row * this.columns + column + 1];
+	}
+
+	/**
+	 * Get the position of a point in the input arrays.
+	 * @param k Position in sorted order (between a cell start and end).
+	 * @return Position of the point in input arrays.
+	 */
+	public int getIndex(int k) {
+		return this.indices[k];
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package coordinates;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Compact container of points in Hough space.
+ * 
+ * The coordinates (and the labels given by modes finding) are stored
+ * in parallel primitive arrays, so that large sets of Hough points can
+ * be built and processed without one object per point.
+ * 
+ * @author julien.pontabry
+ * @see HoughPoint
+ */
+public class HoughSpace {
+	/** Default capacity of a new container. */
+	protected static final int defaultCapacity = 64;
+	
+	/** The theta coordinates (angles) of points (only the first <code>size</code> elements are valid). */
+	public double[] theta;
+	
+	/** The rho coordinates (shifts) of points (only the first <code>size</code> elements are valid). */
+	public double[] rho;
+	
+	/** The labels of points (null until some labeling is done). */
+	public int[] labels;
+	
+	/** The number of points in container. */
+	public int size;
+	
+	/**
+	 * Default constructor.
+	 * 
+	 * Gives an empty container.
+	 */
+	public HoughSpace() {
+		this(HoughSpace.defaultCapacity);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param capacity Initial capacity of the container.
+	 */
+	public HoughSpace(int capacity) {
+		this.theta = new double[Math.max(capacity, 1)];
+		this.rho = new double[Math.max(capacity, 1)];
+		this.labels = null;
+		this.size = 0;
+	}
+	
+	/**
+	 * Constructor.
+	 * @param points Input points used to fill the container.
+	 */
+	public HoughSpace(List<HoughPoint> points) {
+		this(points.size());
+		
+		for (HoughPoint p : points)
+			this.add(p.theta, p.rho);
+	}
+	
+	/**
+	 * Get the number of points in container.
+	 * @return The number of points.
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Check if the container is empty.
+	 * @return True if there is no point in container, false otherwise.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+	
+	/**
+	 * Add a point at the end of the container.
+	 * @param theta The theta coordinate of the point.
+	 * @param rho The rho coordinate of the point.
+	 */
+	public void add(double theta, double rho) {
+		if (this.size == this.theta.length)
+			this.ensureCapacity(2 * this.size);
+		
+		this.theta[this.size] = theta;
+		this.rho[this.size] = rho;
+		this.size++;
+	}
+	
+	/**
+	 * Add all points of another container at the end of this container.
+	 * Labels are not copied.
+	 * @param points Input points to append.
+	 */
+	public void addAll(HoughSpace points) {
+		this.ensureCapacity(this.size + points.size);
+		
+		System.arraycopy(points.theta, 0, this.theta, this.size, points.size);
+		System.arraycopy(points.rho, 0, this.rho, this.size, points.size);
+		this.size += points.size;
+	}
+	
+	/**
+	 * Make sure the container can hold at least the given number of points.
+	 * @param capacity Minimal capacity.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > this.theta.length) {
+			this.theta = Arrays.copyOf(this.theta, capacity);
+			this.rho = Arrays.copyOf(this.rho, capacity);
+		}
+	}
+	
+	/**
+	 * Get a point of the container as an object.
+	 * @param i Position of the point in container.
+	 * @return A new point with the coordinates at the given position.
+	 */
+	public HoughPoint get(int i) {
+		return new HoughPoint(this.theta[i], this.rho[i]);
+	}
+	
+	/**
+	 * Convert the container into a list of points.
+	 * @return A list of points with the same coordinates and order.
+	 */
+	public List<HoughPoint> toList() {
+		List<HoughPoint> points = new Vector<>(this.size);
+		
+		for (int i = 0; i < this.size; i++)
+			points.add(this.get(i));
+		
+		return points;
+	}
+	
+	/**
+	 * Convert point to string format.
+	 */
+	public String toString() {
+		return "HoughSpace["+this.size+"]";
+	}
+}
@@ -18,12 +18,14 @@
  */
 package coordinates;
 
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import ij.IJ;
 import ij.ImagePlus;
@@ -47,6 +49,9 @@ public class ImagePoint extends Point2D {
 	/** Pre-computed constant (useful in particular for local model estimation). */
 	protected static final double PIover2 = Math.PI/2.;
 	
+	/** Scratch buffers of local model estimation (one per thread, to avoid allocations). */
+	private static final ThreadLocal<double[]> scratchBuffers = ThreadLocal.withInitial(() -> new double[256]);
+	
 	/**
 	 * Default constructor.
 	 * 
@@ -223,66 +228,284 @@ public class ImagePoint extends Point2D {
 	 * @return The estimated Hough point (straight line in Hesse normal form).
 	 */
 	public static HoughPoint estimateHoughPoint(ImagePoint p0, List<ImagePoint> points) {
-		// Since angles are circular quantities, it does not have
-		// a proper ordering relationship and we need to center the
-		// angles first to their center of mass.
-		
-		// Initialize
-		List<java.lang.Double> thetas = new Vector<>();
+		int size = points.size();
+		double[] buffer = ImagePoint.getScratchBuffer(3*size);
 		double alpha_sum_sin = 0., alpha_sum_cos = 0.;
 		
-		for (ImagePoint p : points) {
-			// Estimate pairwise angle
-			// We do not use the meth ImagePoint#convertImagePointsToHoughPoint
-			// because we need to enforce the passing through p0 constraint.
-			double theta;
+		for (int i = 0; i < size; i++) {
+			ImagePoint p = points.get(i);
+			buffer[i] = ImagePoint.estimatePairwiseAngle(p0.x - p.x, p0.y - p.y);
 			
-			int a = p0.x - p.x;
-			int b = p0.y - p.y;
-
-			if (a == 0)
-				theta = 0.;
-			else if (b == 0)
-				theta = -ImagePoint.PIover2;
-			else
-				theta = -Math.atan((double)a/(double)b);
-			
-			thetas.add(theta);
-			thetas.add(theta + Math.PI);
+			double alpha = 2.*buffer[i] + Math.PI;
+			alpha_sum_sin += Math.sin(alpha);
+			alpha_sum_cos += Math.cos(alpha);
+		}
+		
+		return ImagePoint.estimateHoughPointFromAngles(p0.x, p0.y, buffer, size, alpha_sum_sin, alpha_sum_cos);
+	}
+	
+	/**
+	 * Estimate a straight line in Hesse normal form with points given by their coordinates.
+	 * @param x0 The X coordinate of a point that is known to be on the line to estimate.
+	 * @param y0 The Y coordinate of a point that is known to be on the line to estimate.
+	 * @param x The X coordinates of the points used to estimate the line.
+	 * @param y The Y coordinates of the points used to estimate the line.
+	 * @param size Number of points (first elements of coordinates arrays).
+	 * @return The estimated Hough point (straight line in Hesse normal form).
+	 * @see estimateHoughPoint(ImagePoint, List)
+	 */
+	public static HoughPoint estimateHoughPoint(int x0, int y0, int[] x, int[] y, int size) {
+		double[] buffer = ImagePoint.getScratchBuffer(3*size);
+		double alpha_sum_sin = 0., alpha_sum_cos = 0.;
+		
+		for (int i = 0; i < size; i++) {
+			buffer[i] = ImagePoint.estimatePairwiseAngle(x0 - x[i], y0 - y[i]);
 			
-			// Center on the center of mass
-			double alpha = 2.*theta + Math.PI;
+			double alpha = 2.*buffer[i] + Math.PI;
 			alpha_sum_sin += Math.sin(alpha);
 			alpha_sum_cos += Math.cos(alpha);
 		}
 		
+		return ImagePoint.estimateHoughPointFromAngles(x0, y0, buffer, size, alpha_sum_sin, alpha_sum_cos);
+	}
+	
+	/**
+	 * Estimate a straight line in Hesse normal form with points given by their coordinates.
+	 * 
+	 * The pairwise angles and the terms of their circular mean are looked up
+	 * in a precomputed table instead of being computed (the neighbors out of
+	 * the table are computed as usual).
+	 * 
+	 * @param x0 The X coordinate of a point that is known to be on the line to estimate.
+	 * @param y0 The Y coordinate of a point that is known to be on the line to estimate.
+	 * @param x The X coordinates of the points used to estimate the line.
+	 * @param y The Y coordinates of the points used to estimate the line.
+	 * @param size Number of points (first elements of coordinates arrays).
+	 * @param table Precomputed table of angles for the offsets of the window.
+	 * @return The estimated Hough point (straight line in Hesse normal form).
+	 * @see estimateHoughPoint(ImagePoint, List)
+	 */
+	public static HoughPoint estimateHoughPoint(int x0, int y0, int[] x, int[] y, int size, AngleTable table) {
+		double[] buffer = ImagePoint.getScratchBuffer(3*size);
+		double alpha_sum_sin = 0., alpha_sum_cos = 0.;
+		
+		for (int i = 0; i < size; i++) {
+			int a = x0 - x[i], b = y0 - y[i];
+			
+			if (table.contains(a, b)) {
+				int index = table.getIndex(a, b);
+				buffer[i] = table.theta[index];
+				alpha_sum_sin += table.alphaSin[index];
+				alpha_sum_cos += table.alphaCos[index];
+			}
+			else {
+				buffer[i] = ImagePoint.estimatePairwiseAngle(a, b);
+				
+				double alpha = 2.*buffer[i] + Math.PI;
+				alpha_sum_sin += Math.sin(alpha);
+				alpha_sum_cos += Math.cos(alpha);
+			}
+		}
+		
+		return ImagePoint.estimateHoughPointFromAngles(x0, y0, buffer, size, alpha_sum_sin, alpha_sum_cos);
+	}
+	
+	/**
+	 * Estimate a straight line in Hesse normal form with the structure tensor of points.
+	 * 
+	 * The line going through p0 is oriented along the principal axis of the
+	 * second moments of the offsets of points to p0. This is computed in a
+	 * single pass over the points, but it is less robust to outliers than the
+	 * Theil-Sen estimator.
+	 * 
+	 * @param x0 The X coordinate of a point that is known to be on the line to estimate.
+	 * @param y0 The Y coordinate of a point that is known to be on the line to estimate.
+	 * @param x The X coordinates of the points used to estimate the line.
+	 * @param y The Y coordinates of the points used to estimate the line.
+	 * @param size Number of points (first elements of coordinates arrays).
+	 * @return The estimated Hough point (straight line in Hesse normal form).
+	 * @see estimateHoughPoint(int, int, int[], int[], int)
+	 */
+	public static HoughPoint estimateHoughPointWithStructureTensor(int x0, int y0, int[] x, int[] y, int size) {
+		long sxx = 0, syy = 0, sxy = 0;
+		
+		for (int i = 0; i < size; i++) {
+			long dx = x[i] - x0, dy = y[i] - y0;
+			sxx += dx*dx;
+			syy += dy*dy;
+			sxy += dx*dy;
+		}
+		
+		return ImagePoint.estimateHoughPointFromMoments(x0, y0, sxx, syy, sxy);
+	}
+	
+	/**
+	 * Estimate a straight line in Hesse normal form from the second moments of offsets to a point.
+	 * @param x0 The X coordinate of a point that is known to be on the line to estimate.
+	 * @param y0 The Y coordinate of a point that is known to be on the line to estimate.
+	 * @param sxx Sum of squared offsets on X axis.
+	 * @param syy Sum of squared offsets on Y axis.
+	 * @param sxy Sum of products of offsets.
+	 * @return The estimated Hough point (straight line in Hesse normal form).
+	 */
+	public static HoughPoint estimateHoughPointFromMoments(int x0, int y0, double sxx, double syy, double sxy) {
+		// Direction of principal axis (in ]-pi/2,pi/2]) and normal to the line (in [-pi/2,pi/2[)
+		double phi = 0.5 * Math.atan2(2.0*sxy, sxx - syy);
+		double theta = phi - ImagePoint.PIover2;
+		
+		if (java.lang.Double.compare(theta, -ImagePoint.PIover2) < 0)
+			theta += Math.PI;
+		
+		// Deduce rho (remember p0 is on the line)
+		double rho = x0*Math.cos(theta) + y0*Math.sin(theta);
+		
+		return new HoughPoint(theta, rho);
+	}
+	
+	/**
+	 * Estimate the angle of the line going through two points.
+	 * We do not use the method ImagePoint#convertImagePointsToHoughPoint
+	 * because we need to enforce the passing through p0 constraint.
+	 * @param a Difference of the points on the X axis.
+	 * @param b Difference of the points on the Y axis.
+	 * @return The angle of the line in Hesse normal form.
+	 */
+	static double estimatePairwiseAngle(int a, int b) {
+		if (a == 0)
+			return 0.;
+		else if (b == 0)
+			return -ImagePoint.PIover2;
+		else
+			return -Math.atan((double)a/(double)b);
+	}
+	
+	/**
+	 * Estimate a straight line with the Theil-Sen estimator from pairwise angles.
+	 * @param x0 The X coordinate of a point that is known to be on the line to estimate.
+	 * @param y0 The Y coordinate of a point that is known to be on the line to estimate.
+	 * @param buffer Pairwise angles in the first <code>size</code> elements (the buffer must hold 3 times <code>size</code> elements).
+	 * @param size Number of pairwise angles.
+	 * @param alpha_sum_sin Sum of the sines of the doubled pairwise angles (shifted by pi).
+	 * @param alpha_sum_cos Sum of the cosines of the doubled pairwise angles (shifted by pi).
+	 * @return The estimated Hough point (straight line in Hesse normal form).
+	 */
+	private static HoughPoint estimateHoughPointFromAngles(int x0, int y0, double[] buffer, int size, double alpha_sum_sin, double alpha_sum_cos) {
+		if (size == 0)
+			throw new IllegalArgumentException("At least one point is needed to estimate a line!");
+		
+		// Since angles are circular quantities, it does not have
+		// a proper ordering relationship and we need to center the
+		// angles first to their center of mass.
+		
 		// Compute center of mass
 		double alpha_mass = Math.atan2(-alpha_sum_sin, -alpha_sum_cos);
 		double theta_mass = alpha_mass/2.;
 		
-		// Center pairwise angles on the center of mass and limit to range [-pi/2, pi/2[
+		// Center pairwise angles (and their opposite) on the center of mass and limit to range [-pi/2, pi/2[
+		// (they are stored after the pairwise angles in the buffer)
 		double inf_bound = -ImagePoint.PIover2+theta_mass, sup_bound = ImagePoint.PIover2+theta_mass;
+		int count = size;
 		
-		List<java.lang.Double> centered_thetas = new Vector<>();
-		
-		for (int i = 0; i < thetas.size(); i++) {
-			double centered_theta = thetas.get(i);
+		for (int i = 0; i < size; i++) {
+			double theta = buffer[i];
 			
-			if (java.lang.Double.compare(centered_theta, inf_bound) >= 0 && java.lang.Double.compare(centered_theta, sup_bound) <= 0)
-				centered_thetas.add(centered_theta);
+			if (java.lang.Double.compare(theta, inf_bound) >= 0 && java.lang.Double.compare(theta, sup_bound) <= 0)
+				buffer[count++] = theta;
+			
+			theta += Math.PI;
+			
+			if (java.lang.Double.compare(theta, inf_bound) >= 0 && java.lang.Double.compare(theta, sup_bound) <= 0)
+				buffer[count++] = theta;
 		}
 		
-		// Estimate the fitting angle with Theil-Sen and map it back to original range
-		centered_thetas.sort(null);
-		double theta = centered_thetas.get(centered_thetas.size()/2);
+		// Estimate the fitting angle with Theil-Sen (median found by selection)
+		double theta = ImagePoint.select(buffer, size, count, size + (count-size)/2);
 		
 		// Deduce rho (remember p0 is on the line)
-		double rho = p0.x*Math.cos(theta) + p0.y*Math.sin(theta);
-		
+		double rho = x0*Math.cos(theta) + y0*Math.sin(theta);
 		
 		return new HoughPoint(theta, rho);
 	}
 	
+	/**
+	 * Find the k-th smallest element of a part of an array (quickselect).
+	 * The elements of the part are reordered.
+	 * @param values Input values.
+	 * @param from First position of the part (inclusive).
+	 * @param to Last position of the part (exclusive).
+	 * @param k Position of the element in the sorted part (between from and to).
+	 * @return The element that would be at position k if the part was sorted.
+	 */
+	private static double select(double[] values, int from, int to, int k) {
+		int left = from, right = to-1;
+		
+		while (left < right) {
+			// Median of three as pivot
+			int middle = (left + right) >>> 1;
+			
+			if (values[middle] < values[left])
+				ImagePoint.swap(values, middle, left);
+			if (values[right] < values[left])
+				ImagePoint.swap(values, right, left);
+			if (values[right] < values[middle])
+				ImagePoint.swap(values, right, middle);
+			
+			double pivot = values[middle];
+			int i = left, j = right;
+			
+			// Partition (Hoare scheme)
+			while (i <= j) {
+				while (values[i] < pivot)
+					i++;
+				while (values[j] > pivot)
+					j--;
+				
+				if (i <= j) {
+					ImagePoint.swap(values, i, j);
+					i++;
+					j--;
+				}
+			}
+			
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				return values[k];
+		}
+		
+		return values[k];
+	}
+	
+	/**
+	 * Swap two elements of an array.
+	 * @param values Input array.
+	 * @param i Position of first element.
+	 * @param j Position of second element.
+	 */
+	private static void swap(double[] values, int i, int j) {
+		double tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+	}
+	
+	/**
+	 * Get the scratch buffer of the current thread.
+	 * @param size Minimal size of the buffer.
+	 * @return A buffer of at least the given size (its content is undefined).
+	 */
+	private static double[] getScratchBuffer(int size) {
+		double[] buffer = ImagePoint.scratchBuffers.get();
+		
+		if (buffer.length < size) {
+			buffer = new double[Math.max(size, 2*buffer.length)];
+			ImagePoint.scratchBuffers.set(buffer);
+		}
+		
+		return buffer;
+	}
+	
 	/**
 	 * Convenience method for straight line estimation (Hesse normal form).
 	 * @param p0 A point that is known to be on the line to estimate.
@@ -347,45 +570,105 @@ public class ImagePoint extends Point2D {
 	 * @param roi Input roi.
 	 * @param origin Origin of the coordinate system.
 	 * @return A list of points coordinates.
+	 * @see getImageForegroundPointArray
 	 */
 	public static List<ImagePoint> getImageForegroundPoints(ImagePlus image, Roi roi, ImagePoint origin) {
+		return ImagePoint.getImageForegroundPointArray(image, roi, origin).toList();
+	}
+	
+	/**
+	 * Get the point coordinates of foreground pixels in image as a compact container.
+	 * 
+	 * The pixel array of the image is scanned directly in the calling thread,
+	 * and only within the bounds of the roi (the roi mask is used when the roi
+	 * is not rectangular). Points are given in row-major order.
+	 * 
+	 * @param image Input image.
+	 * @param roi Input roi.
+	 * @param origin Origin of the coordinate system.
+	 * @return The points coordinates.
+	 * @see getImageForegroundPointArray(ImagePlus, Roi, ImagePoint, ExecutorService)
+	 */
+	public static ImagePointArray getImageForegroundPointArray(ImagePlus image, Roi roi, ImagePoint origin) {
+		return ImagePoint.getImageForegroundPointArray(image, roi, origin, null);
+	}
+	
+	/**
+	 * Get the point coordinates of foreground pixels in image as a compact container.
+	 * 
+	 * The pixel array of the image is scanned directly by bands of rows in
+	 * parallel, and only within the bounds of the roi (the roi mask is used
+	 * when the roi is not rectangular). Points are given in row-major order.
+	 * 
+	 * @param image Input image.
+	 * @param roi Input roi.
+	 * @param origin Origin of the coordinate system.
+	 * @param executor Executor running the parallel tasks (it is not shut down), or null to scan in the calling thread.
+	 * @return The points coordinates.
+	 */
+	public static ImagePointArray getImageForegroundPointArray(ImagePlus image, Roi roi, ImagePoint origin, ExecutorService executor) {
 		ImageProcessor processor = image.getProcessor();
+		Object pixels = processor.getPixels();
+		int width = image.getWidth();
+		
+		// Restrict the scan to the part of the roi inside the image
+		Rectangle roiBounds = roi.getBounds();
+		Rectangle bounds = roiBounds.intersection(new Rectangle(0, 0, width, image.getHeight()));
+		
+		if (bounds.isEmpty())
+			return new ImagePointArray();
+		
+		ImageProcessor mask = roi.getMask();
+		byte[] maskPixels = (mask != null) ? (byte[])mask.getPixels() : null;
 		
-		// Setup functions to be executed in parallel
-		List<Callable<ImagePoint>> tasks = new Vector<>();
+		// Cut the scan in bands of rows (a few per thread to balance the load)
+		int cores = ImagePoint.getParallelism(executor);
+		int bandHeight = Math.max(1, (bounds.height + 4*cores - 1) / (4*cores));
 		
-		for (int y = 0; y < image.getHeight(); y++) {
-			for (int x = 0; x < image.getWidth(); x++) {
-				ImagePoint p = new ImagePoint(x, y);
+		List<Callable<ImagePointArray>> tasks = new Vector<>();
+		
+		for (int band = bounds.y; band < bounds.y + bounds.height; band += bandHeight) {
+			final int startY = band;
+			final int   endY = Math.min(band + bandHeight, bounds.y + bounds.height);
+			
+			tasks.add(() -> {
+				ImagePointArray points = new ImagePointArray();
 				
-				tasks.add(() -> {
-					if (roi.contains(p.x, p.y) && processor.get(p.x, p.y) > 0)
-						return p.subtract(origin);
-					else
-						return null;
-				});
-			}
+				for (int y = startY; y < endY; y++) {
+					int offset = y * width;
+					int maskOffset = (y - roiBounds.y) * roiBounds.width - roiBounds.x;
+					
+					for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+						if ((maskPixels == null || maskPixels[maskOffset + x] != 0) && ImagePoint.isForeground(pixels, processor, offset + x))
+							points.add(x - origin.x, y - origin.y);
+					}
+				}
+				
+				return points;
+			});
 		}
 		
-		// Run threads in parallel and reduce results
-		Vector<ImagePoint> results = new Vector<>();
-		ExecutorService executor = Executors.newWorkStealingPool();
+		// Run threads in parallel (or in the calling thread) and reduce results (in bands order)
+		ImagePointArray results = new ImagePointArray();
 		
 	    try {
-	        executor.invokeAll(tasks)
-	        	.stream()
-	        	.map(future -> {
-	        		try {
-	        			return future.get();
-	        		}
-	        		catch (Exception e) {
-	        			throw new IllegalStateException(e);
-	        		}
-	        	})
-	        	.forEach(result -> {
-	        		if (result != null) 
-	        			results.add(result);
-	        	});
+	    	if (executor == null) {
+	    		for (Callable<ImagePointArray> task : tasks)
+	    			results.addAll(task.call());
+	    	}
+	    	else {
+		        executor.invokeAll(tasks)
+		        	.stream()
+		        	.map(future -> {
+		        		try {
+		        			return future.get();
+		        		}
+		        		catch (Exception e) {
+		        			throw new IllegalStateException(e);
+		        		}
+		        	})
+		        	.forEach(result -> results.addAll(result));
+	    	}
 	    }
 	    catch (Exception e) {
 	    	IJ.error("Exception", "An exception occured!\n" + e.getMessage());
@@ -393,4 +676,39 @@ public class ImagePoint extends Point2D {
 		
 		return results;
 	}
+	
+	/**
+	 * Get the parallelism of an executor (the tasks are cut from it).
+	 * @param executor Executor running the parallel tasks, or null.
+	 * @return The maximal number of threads of the executor (one without executor, the number of cores when it is unknown).
+	 */
+	private static int getParallelism(ExecutorService executor) {
+		if (executor == null)
+			return 1;
+		else if (executor instanceof ForkJoinPool)
+			return ((ForkJoinPool)executor).getParallelism();
+		else if (executor instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor)executor).getMaximumPoolSize();
+		else
+			return Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * Check if a pixel is foreground (strictly positive value).
+	 * The pixel array is accessed directly for the usual image types.
+	 * @param pixels Pixel array of the processor.
+	 * @param processor Image processor (used for other image types).
+	 * @param index Index of the pixel in the array.
+	 * @return True if the pixel is foreground, false otherwise.
+	 */
+	private static boolean isForeground(Object pixels, ImageProcessor processor, int index) {
+		if (pixels instanceof byte[])
+			return (((byte[])pixels)[index] & 0xff) > 0;
+		else if (pixels instanceof short[])
+			return (((short[])pixels)[index] & 0xffff) > 0;
+		else if (pixels instanceof float[])
+			return ((float[])pixels)[index] > 0f;
+		else
+			return processor.get(index) > 0;
+	}
 }
@@ -0,0 +1,147 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package coordinates;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Compact container of points in image space.
+ *
+ * The coordinates are stored in two parallel primitive arrays, so
+ * that large sets of points (typically the foreground pixels of an
+ * image) do not require one object per point.
+ *
+ * @author julien.pontabry
+ */
+public class ImagePointArray {
+	/** Default capacity of a new container. */
+	protected static final int defaultCapacity = 64;
+
+	/** The X coordinates of points (only the first <code>size</code> elements are valid). */
+	public int[] x;
+
+	/** The Y coordinates of points (only the first <code>size</code> elements are valid). */
+	public int[] y;
+
+	/** The number of points in container. */
+	public int size;
+
+	/**
+	 * Default constructor.
+	 *
+	 * Gives an empty container.
+	 */
+	public ImagePointArray() {
+		this(ImagePointArray.defaultCapacity);
+	}
+
+	/**
+	 * Constructor.
+	 * @param capacity Initial capacity of the container.
+	 */
+	public ImagePointArray(int capacity) {
+		this.x = new int[Math.max(capacity, 1)];
+		this.y = new int[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	/**
+	 * Get the number of points in container.
+	 * @return The number of points.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Check if the container is empty.
+	 * @return True if there is no point in container, false otherwise.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Add a point at the end of the container.
+	 * @param x The X coordinate of the point.
+	 * @param y The Y coordinate of the point.
+	 */
+	public void add(int x, int y) {
+		if (this.size == this.x.length)
+			this.ensureCapacity(2 * this.size);
+
+		this.x[this.size] = x;
+		this.y[this.size] = y;
+		this.size++;
+	}
+
+	/**
+	 * Add all points of another container at the end of this container.
+	 * @param points Input points to append.
+	 */
+	public void addAll(ImagePointArray points) {
+		this.ensureCapacity(this.size + points.size);
+
+		System.arraycopy(points.x, 0, this.x, this.size, points.size);
+		System.arraycopy(points.y, 0, this.y, this.size, points.size);
+		this.size += points.size;
+	}
+
+	/**
+	 * Make sure the container can hold at least the given number of points.
+	 * @param capacity Minimal capacity.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > this.x.length) {
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+		}
+	}
+
+	/**
+	 * Get a point of the container as an object.
+	 * @param i Position of the point in container.
+	 * @return A new point with the coordinates at the given position.
+	 */
+	public ImagePoint get(int i) {
+		return new ImagePoint(this.x[i], this.y[i]);
+	}
+
+	/**
+	 * Convert the container into a list of points.
+	 * @return A list of points with the same coordinates and order.
+	 */
+	public List<ImagePoint> toList() {
+		List<ImagePoint> points = new Vector<>(this.size);
+
+		for (int i = 0; i < this.size; i++)
+			points.add(this.get(i));
+
+		return points;
+	}
+
+	/**
+	 * Convert point to string format.
+	 */
+	public String toString() {
+		return "ImagePointArray["+this.size+"]";
+	}
+}
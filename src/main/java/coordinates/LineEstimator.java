@@ -0,0 +1,68 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package coordinates;
+
+/**
+ * Estimators of the local line going through a foreground point.
+ *
+ * @author julien.pontabry
+ */
+public enum LineEstimator {
+	/** Theil-Sen estimator (median of pairwise angles), robust to outliers. */
+	THEIL_SEN("Theil-Sen (robust)"),
+
+	/** Structure tensor (principal axis of second moments) of the neighborhood, faster but less robust. */
+	STRUCTURE_TENSOR("Structure tensor (fast)"),
+
+	/** Structure tensor of the square window computed from trees of row sums of moments, for large windows. */
+	ROW_SUMS_STRUCTURE_TENSOR("Structure tensor with row sums trees");
+
+	/** Name displayed in user interface. */
+	private final String label;
+
+	/**
+	 * Constructor.
+	 * @param label Name displayed in user interface.
+	 */
+	private LineEstimator(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * Get the name displayed in user interface.
+	 * @return Name of the estimator.
+	 */
+	public String getLabel() {
+		return this.label;
+	}
+
+	/**
+	 * Get the names of all estimators displayed in user interface.
+	 * @return Names of the estimators (in declaration order).
+	 */
+	public static String[] getLabels() {
+		LineEstimator[] estimators = LineEstimator.values();
+		String[] labels = new String[estimators.length];
+
+		for (int i = 0; i < estimators.length; i++)
+			labels[i] = estimators[i].label;
+
+		return labels;
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package coordinates;
+
+import java.util.Arrays;
+
+/**
+ * Row sums of the moments of a set of points in image space.
+ *
+ * The points are sorted by row, then by column, and the number of points,
+ * the sums of their first coordinates and of their squared first coordinates
+ * are accumulated along each row, so that the second moments of the points
+ * in any rectangular window are computed from one range query per row of the
+ * window. Only the points are stored (there is no image of the bounding
+ * box), so that the memory is linear in the number of points. Coordinates are
+ * taken relative to the bounding box, so that sums are exact integers.
+ *
+ * The sums are stored as binary indexed trees on each row, so a range query
+ * costs a logarithmic time in the length of the row.
+ *
+ * Points can be removed afterwards in a logarithmic time (their values are
+ * subtracted from the trees), so that the sums follow a shrinking set of
+ * points without being rebuilt. Queries can run concurrently, but not during
+ * a removal.
+ *
+ * @author julien.pontabry
+ */
+public class RowSumMoments {
+	/** Lower bound of the first axis. */
+	protected int minX;
+
+	/** Lower bound of the second axis. */
+	protected int minY;
+
+	/** Number of rows of the bounding box. */
+	protected int height;
+
+	/** Start position of each row in sorted points (one more element for the end of last row). */
+	protected int[] rowStarts;
+
+	/** First coordinates of points sorted by row and column (relative to bounding box). */
+	protected int[] xs;
+
+	/** Binary indexed trees of the number of points on each row. */
+	protected int[] count;
+
+	/** Binary indexed trees of the first coordinates on each row. */
+	protected long[] sumX;
+
+	/** Binary indexed trees of the squared first coordinates on each row. */
+	protected long[] sumXX;
+
+	/**
+	 * Build the row sums of points.
+	 * @param points Input points (each point must appear only once).
+	 */
+	public RowSumMoments(ImagePointArray points) {
+		// Compute bounding box
+		int minX = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE;
+
+		for (int i = 0; i < points.size; i++) {
+			minX = Math.min(minX, points.x[i]);
+			minY = Math.min(minY, points.y[i]); maxY = Math.max(maxY, points.y[i]);
+		}
+
+		if (points.size == 0) {
+			minX = minY = maxY = 0;
+		}
+
+		this.minX = minX;
+		this.minY = minY;
+		this.height = maxY - minY + 1;
+
+		// Sort points by row (counting sort, stable)
+		this.rowStarts = new int[this.height + 1];
+
+		for (int i = 0; i < points.size; i++)
+			this.rowStarts[points.y[i] - minY + 1]++;
+
+		for (int r = 0; r < this.height; r++)
+			this.rowStarts[r + 1] += this.rowStarts[r];
+
+		int[] next = Arrays.copyOf(this.rowStarts, this.height);
+		this.xs = new int[points.size];
+
+		for (int i = 0; i < points.size; i++)
+			this.xs[next[points.y[i] - minY]++] = points.x[i] - minX;
+
+		// Sort each row by column (rows of foreground points are already sorted)
+		for (int r = 0; r < this.height; r++) {
+			int start = this.rowStarts[r], end = this.rowStarts[r + 1];
+			boolean sorted = true;
+
+			for (int k = start + 1; k < end && sorted; k++)
+				sorted = this.xs[k - 1] <= this.xs[k];
+
+			if (!sorted)
+				Arrays.sort(this.xs, start, end);
+		}
+
+		// Build the binary indexed trees of each row
+		this.count = new int[points.size];
+		this.sumX = new long[points.size];
+		this.sumXX = new long[points.size];
+
+		for (int r = 0; r < this.height; r++) {
+			int start = this.rowStarts[r], length = this.rowStarts[r + 1] - start;
+
+			for (int k = 0; k < length; k++) {
+				long x = this.xs[start + k];
+				this.count[start + k] += 1;
+				this.sumX[start + k] += x;
+				this.sumXX[start + k] += x * x;
+
+				// Propagate to the parent node (positions in tree are one-based)
+				int parent = (k + 1) + ((k + 1) & -(k + 1));
+
+				if (parent <= length) {
+					this.count[start + parent - 1] += this.count[start + k];
+					this.sumX[start + parent - 1] += this.sumX[start + k];
+					this.sumXX[start + parent - 1] += this.sumXX[start + k];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the second moments of the points in a square window, relative to its center.
+	 * @param x0 The X coordinate of the center of window.
+	 * @param y0 The Y coordinate of the center of window.
+	 * @param halfSize Half size of the window.
+	 * @param moments Output moments (number of points, sum of squared offsets on X and Y axes, sum of products of offsets).
+	 */
+	public void getMoments(int x0, int y0, int halfSize, double[] moments) {
+		// Clip the window to the rows of the bounding box
+		int r1 = Math.max(y0 - halfSize - this.minY, 0), r2 = Math.min(y0 + halfSize - this.minY, this.height - 1);
+		int x1 = x0 - halfSize - this.minX, x2 = x0 + halfSize - this.minX;
+
+		long n = 0, sx = 0, sy = 0, sxx = 0, syy = 0, sxy = 0;
+
+		for (int r = r1; r <= r2; r++) {
+			int start = this.rowStarts[r], end = this.rowStarts[r + 1];
+
+			if (start == end)
+				continue;
+
+			// Range of the points of the row within the window (positions in tree)
+			int k1 = RowSumMoments.lowerBound(this.xs, start, end, x1) - start;
+			int k2 = RowSumMoments.lowerBound(this.xs, start, end, x2 + 1) - start;
+
+			if (k1 >= k2)
+				continue;
+
+			long rowN   = this.sum(this.count, start, k2) - this.sum(this.count, start, k1);
+			long rowSx  = this.sum(this.sumX, start, k2) - this.sum(this.sumX, start, k1);
+			long rowSxx = this.sum(this.sumXX, start, k2) - this.sum(this.sumXX, start, k1);
+			long y = r;
+
+			n   += rowN;
+			sx  += rowSx;
+			sy  += rowN * y;
+			sxx += rowSxx;
+			syy += rowN * y * y;
+			sxy += rowSx * y;
+		}
+
+		// Expand the sums of offsets to the center
+		double cx = x0 - this.minX, cy = y0 - this.minY;
+		moments[0] = n;
+		moments[1] = sxx - 2.0*cx*sx + n*cx*cx;
+		moments[2] = syy - 2.0*cy*sy + n*cy*cy;
+		moments[3] = sxy - cx*sy - cy*sx + n*cx*cy;
+	}
+
+	/**
+	 * Remove a point from the sums.
+	 * @param x The X coordinate of the point (it must have been given at construction and not removed yet).
+	 * @param y The Y coordinate of the point.
+	 * @return True if the point has been found, false otherwise.
+	 */
+	public boolean remove(int x, int y) {
+		int r = y - this.minY;
+
+		if (r < 0 || r >= this.height)
+			return false;
+
+		int start = this.rowStarts[r], end = this.rowStarts[r + 1];
+		int position = RowSumMoments.lowerBound(this.xs, start, end, x - this.minX);
+
+		if (position == end || this.xs[position] != x - this.minX)
+			return false;
+
+		// Subtract the values of the point from its node and its parents
+		long value = this.xs[position];
+
+		for (int k = position - start + 1; k <= end - start; k += k & -k) {
+			this.count[start + k - 1] -= 1;
+			this.sumX[start + k - 1]  -= value;
+			this.sumXX[start + k - 1] -= value * value;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Find the first position of a sorted range whose value is not less than a value.
+	 * @param values Sorted values.
+	 * @param start First position of the range (inclusive).
+	 * @param end Last position of the range (exclusive).
+	 * @param value Searched value.
+	 * @return The first position whose value is greater or equal than the searched value (end if none).
+	 */
+	private static int lowerBound(int[] values, int start, int end, int value) {
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+
+			if (values[middle] < value)
+				start = middle + 1;
+			else
+				end = middle;
+		}
+
+		return start;
+	}
+
+	/**
+	 * Sum the first values of a row in a binary indexed tree.
+	 * @param tree Binary indexed trees of rows.
+	 * @param start Start position of the row.
+	 * @param k Number of values to sum.
+	 * @return The sum of the first values of the row.
+	 */
+	private long sum(int[] tree, int start, int k) {
+		long sum = 0;
+
+		for (; k > 0; k -= k & -k)
+			sum += tree[start + k - 1];
+
+		return sum;
+	}
+
+	/**
+	 * Sum the first values of a row in a binary indexed tree.
+	 * @param tree Binary indexed trees of rows.
+	 * @param start Start position of the row.
+	 * @param k Number of values to sum.
+	 * @return The sum of the first values of the row.
+	 */
+	private long sum(long[] tree, int start, int k) {
+		long sum = 0;
+
+		for (; k > 0; k -= k & -k)
+			sum += tree[start + k - 1];
+
+		return sum;
+	}
+}
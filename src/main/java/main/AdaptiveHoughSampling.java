@@ -0,0 +1,332 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+
+import coordinates.HoughSpace;
+
+/**
+ * Adaptive sampling of Hough space.
+ *
+ * Local models are sampled in batches and the selected modes are updated
+ * after each batch, until the selection does not change anymore: the same
+ * number of modes is found and each mode moved by less than a fraction of
+ * the bandwidths. Each batch doubles the number of accumulated samples, so
+ * the total cost of the successive selections is at most twice the cost of
+ * the last one.
+ *
+ * @author julien.pontabry
+ */
+public class AdaptiveHoughSampling {
+	/** Default maximal number of samples. */
+	public static final int defaultMaxSamples = 16000;
+
+	/** Number of samples of the first batch. */
+	protected int batchSize = 1000;
+
+	/** Maximal number of samples (at least the number of samples of the first batch). */
+	protected int maxSamples = AdaptiveHoughSampling.defaultMaxSamples;
+
+	/** Engine finding the candidate points in Hough space. */
+	protected HoughEngine engine = HoughEngine.MEAN_SHIFT;
+
+	/** Tolerance on the move of modes between batches (as a fraction of the bandwidths). */
+	protected double tolerance = 0.5;
+
+	/** Size of quantization bins of mean-shift (as a fraction of the bandwidths, zero to disable binning). */
+	protected double binning = 0.0;
+
+	/** Sensitivity to selection of candidates points (in [0,1]). */
+	protected double selectionSensitivity;
+
+	/** Soft threshold for angle (in degrees). */
+	protected double angularSensitivity;
+
+	/** Soft threshold for line thickness (in pixels). */
+	protected double thicknessSensitivity;
+
+	/** Executor running the parallel tasks (a temporary pool is used when null). */
+	protected ExecutorService executor = null;
+
+	/** Points in Hough space sampled during last run. */
+	protected HoughSpace houghPoints = null;
+
+	/** Points in Hough space selected during last run. */
+	protected HoughSpace selectedPoints = null;
+
+	/** Number of samples drawn during last run. */
+	protected int numberOfSamples = 0;
+
+	/** Number of batches of last run. */
+	protected int numberOfBatches = 0;
+
+	/** True if the selection of last run has been stable before the maximal number of samples. */
+	protected boolean converged = false;
+
+	/**
+	 * Constructor.
+	 * @param selectionSensitivity Sensitivity to selection of candidates points (in [0,1]).
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 */
+	public AdaptiveHoughSampling(double selectionSensitivity, double angularSensitivity, double thicknessSensitivity) {
+		this.selectionSensitivity = selectionSensitivity;
+		this.angularSensitivity   = angularSensitivity;
+		this.thicknessSensitivity = thicknessSensitivity;
+	}
+
+	/**
+	 * Sample local models until the selected modes are stable.
+	 * @param sampler Sampler of local models of skeleton image.
+	 * @param seed Seed of random sampling (the seed of each batch is drawn from it).
+	 * @return The selected points in Hough space.
+	 */
+	public HoughSpace runWith(LocalModelSampler sampler, long seed) {
+		if (this.executor != null)
+			return this.runWith(sampler, seed, this.executor);
+
+		try (ExecutionContext context = new ExecutionContext()) {
+			return this.runWith(sampler, seed, context.getExecutor());
+		}
+	}
+
+	/**
+	 * Sample local models until the selected modes are stable.
+	 * @param sampler Sampler of local models of skeleton image.
+	 * @param seed Seed of random sampling (the seed of each batch is drawn from it).
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return The selected points in Hough space.
+	 * @throws IllegalArgumentException When the first batch is larger than the maximal number of samples.
+	 */
+	protected HoughSpace runWith(LocalModelSampler sampler, long seed, ExecutorService executor) {
+		if (this.batchSize > this.maxSamples)
+			throw new IllegalArgumentException("The number of samples of the first batch must be lesser or equal than the maximal number of samples!");
+
+		SplittableRandom generator = new SplittableRandom(seed);
+		HoughSpace previousPoints = null;
+
+		DetectionOptions options = new DetectionOptions();
+		options.setEngine(this.engine);
+		options.setBinning(this.binning);
+		options.setExecutor(executor);
+
+		this.houghPoints     = new HoughSpace(this.batchSize);
+		this.selectedPoints  = null;
+		this.numberOfSamples = 0;
+		this.numberOfBatches = 0;
+		this.converged       = false;
+
+		while (!this.converged && this.numberOfSamples < this.maxSamples) {
+			// Double the number of samples (the first batch has the batch size)
+			int size = Math.min(Math.max(this.batchSize, this.numberOfSamples), this.maxSamples - this.numberOfSamples);
+			this.houghPoints.addAll(sampler.sample(size, generator.nextLong(), executor));
+			this.numberOfSamples += size;
+			this.numberOfBatches++;
+
+			// Update the selection and compare with the previous one
+			previousPoints = this.selectedPoints;
+			this.selectedPoints = Extract_DNA_Fibers.selectHoughPoints(this.houghPoints, this.selectionSensitivity,
+					this.angularSensitivity, this.thicknessSensitivity, options);
+
+			this.converged = previousPoints != null && this.isSameSelection(previousPoints, this.selectedPoints);
+		}
+
+		return this.selectedPoints;
+	}
+
+	/**
+	 * Check if two selections of modes are the same within tolerance.
+	 * Each mode should match a distinct mode of the other selection, the angular
+	 * axis being periodic (point (theta,rho) is the same line as (theta+pi,-rho)).
+	 * @param previous Previous selection.
+	 * @param current Current selection.
+	 * @return True if both selections are the same.
+	 */
+	protected boolean isSameSelection(HoughSpace previous, HoughSpace current) {
+		if (previous.size != current.size)
+			return false;
+
+		double thetaTolerance = this.tolerance * this.angularSensitivity * Math.PI/180.0;
+		double   rhoTolerance = this.tolerance * this.thicknessSensitivity;
+		boolean[]     matched = new boolean[previous.size];
+
+		for (int i = 0; i < current.size; i++) {
+			boolean found = false;
+
+			for (int j = 0; j < previous.size && !found; j++) {
+				if (matched[j])
+					continue;
+
+				double dTheta = Math.abs(current.theta[i] - previous.theta[j]);
+				double   dRho = Math.abs(current.rho[i] - previous.rho[j]);
+
+				if (Double.compare(dTheta, Math.PI/2.0) > 0) {
+					dTheta = Math.PI - dTheta;
+					dRho   = Math.abs(current.rho[i] + previous.rho[j]);
+				}
+
+				found = matched[j] = Double.compare(dTheta, thetaTolerance) <= 0 && Double.compare(dRho, rhoTolerance) <= 0;
+			}
+
+			if (!found)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Set the number of samples of the first batch.
+	 * @param batchSize Number of samples (strictly positive).
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Get the number of samples of the first batch.
+	 * @return The number of samples.
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set the engine finding the candidate points.
+	 * @param engine Engine finding the candidate points in Hough space.
+	 */
+	public void setEngine(HoughEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Get the engine finding the candidate points.
+	 * @return The engine finding the candidate points in Hough space.
+	 */
+	public HoughEngine getEngine() {
+		return this.engine;
+	}
+
+	/**
+	 * Set the size of quantization bins of mean-shift.
+	 * @param binning Size of bins as a fraction of the bandwidths (zero to disable binning).
+	 * @see MeanShift#setBinning(double)
+	 */
+	public void setBinning(double binning) {
+		this.binning = binning;
+	}
+
+	/**
+	 * Get the size of quantization bins of mean-shift.
+	 * @return Size of bins as a fraction of the bandwidths (zero when binning is disabled).
+	 */
+	public double getBinning() {
+		return this.binning;
+	}
+
+	/**
+	 * Set the maximal number of samples.
+	 * @param maxSamples Maximal number of samples.
+	 */
+	public void setMaxSamples(int maxSamples) {
+		this.maxSamples = maxSamples;
+	}
+
+	/**
+	 * Get the maximal number of samples.
+	 * @return The maximal number of samples.
+	 */
+	public int getMaxSamples() {
+		return this.maxSamples;
+	}
+
+	/**
+	 * Set the tolerance on the move of modes between batches.
+	 * @param tolerance Tolerance as a fraction of the bandwidths.
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Get the tolerance on the move of modes between batches.
+	 * @return The tolerance as a fraction of the bandwidths.
+	 */
+	public double getTolerance() {
+		return this.tolerance;
+	}
+
+	/**
+	 * Set the executor running the parallel tasks.
+	 * @param executor Executor (it is not shut down), or null to use a temporary pool.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the executor running the parallel tasks.
+	 * @return The executor, or null when a temporary pool is used.
+	 */
+	public ExecutorService getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Get the number of samples drawn during last run.
+	 * @return The number of samples.
+	 */
+	public int getNumberOfSamples() {
+		return this.numberOfSamples;
+	}
+
+	/**
+	 * Get the number of batches of last run.
+	 * @return The number of batches.
+	 */
+	public int getNumberOfBatches() {
+		return this.numberOfBatches;
+	}
+
+	/**
+	 * Check if the selection of last run has been stable.
+	 * @return True if the selection did not change anymore before the maximal number of samples.
+	 */
+	public boolean hasConverged() {
+		return this.converged;
+	}
+
+	/**
+	 * Get the points in Hough space sampled during last run.
+	 * @return The Hough points (labeled by the last selection).
+	 */
+	public HoughSpace getHoughPoints() {
+		return this.houghPoints;
+	}
+
+	/**
+	 * Get the points in Hough space selected during last run.
+	 * @return The selected points.
+	 */
+	public HoughSpace getSelectedPoints() {
+		return this.selectedPoints;
+	}
+}
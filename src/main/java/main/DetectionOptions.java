@@ -0,0 +1,283 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.concurrent.ExecutorService;
+
+import coordinates.LineEstimator;
+
+/**
+ * Options of the detection of fibers.
+ *
+ * The options have the default values of the original detection (random
+ * samples estimated with Theil-Sen, modes found by mean-shift without
+ * binning, segments built from the band of each line), so that only the
+ * options that differ need to be set.
+ *
+ * @author julien.pontabry
+ */
+public class DetectionOptions {
+	/** True to use the local models of all skeleton pixels (computed once) instead of random samples. */
+	protected boolean allPixels = false;
+
+	/** True to sample by batches until the selected points are stable. */
+	protected boolean adaptiveSampling = false;
+
+	/** Maximal number of samples with adaptive sampling. */
+	protected int maxSamples = AdaptiveHoughSampling.defaultMaxSamples;
+
+	/** True to detect lines one at a time, removing their points before sampling again. */
+	protected boolean progressive = false;
+
+	/** Estimator of local models. */
+	protected LineEstimator estimator = LineEstimator.THEIL_SEN;
+
+	/** Engine finding the candidate points in Hough space. */
+	protected HoughEngine engine = HoughEngine.MEAN_SHIFT;
+
+	/** Size of quantization bins of Hough points for mean-shift (as a fraction of sensitivities, zero to disable binning). */
+	protected double binning = 0.0;
+
+	/** Strategy gathering the foreground points of the selected points when building segments. */
+	protected SegmentBuilder builder = SegmentBuilder.LINE_BAND;
+
+	/** True to find gaps on the projection of points on each line (without sorting). */
+	protected boolean projectedGaps = false;
+
+	/** True to merge the overlapping or close collinear segments. */
+	protected boolean mergeSegments = false;
+
+	/** Receiver of the segments of each line as soon as they are built (none when null). */
+	protected SegmentListener listener = null;
+
+	/** Seed of random sampling. */
+	protected long seed = Extract_DNA_Fibers.defaultSeed;
+
+	/** Executor running the parallel tasks (a temporary pool is used when null). */
+	protected ExecutorService executor = null;
+
+	/**
+	 * Set the use of all skeleton pixels.
+	 * @param allPixels True to use the local models of all skeleton pixels (computed once) instead of random samples.
+	 */
+	public void setAllPixels(boolean allPixels) {
+		this.allPixels = allPixels;
+	}
+
+	/**
+	 * Get the use of all skeleton pixels.
+	 * @return True if the local models of all skeleton pixels are used instead of random samples.
+	 */
+	public boolean getAllPixels() {
+		return this.allPixels;
+	}
+
+	/**
+	 * Set the adaptive sampling.
+	 * @param adaptiveSampling True to sample by batches (of the number of points at first) until the selected points are stable (not with all pixels or the accumulator engine).
+	 */
+	public void setAdaptiveSampling(boolean adaptiveSampling) {
+		this.adaptiveSampling = adaptiveSampling;
+	}
+
+	/**
+	 * Get the adaptive sampling.
+	 * @return True if samples are drawn by batches until the selected points are stable.
+	 */
+	public boolean getAdaptiveSampling() {
+		return this.adaptiveSampling;
+	}
+
+	/**
+	 * Set the maximal number of samples with adaptive sampling.
+	 * @param maxSamples Maximal number of samples (at least the number of points).
+	 */
+	public void setMaxSamples(int maxSamples) {
+		this.maxSamples = maxSamples;
+	}
+
+	/**
+	 * Get the maximal number of samples with adaptive sampling.
+	 * @return The maximal number of samples.
+	 */
+	public int getMaxSamples() {
+		return this.maxSamples;
+	}
+
+	/**
+	 * Set the progressive detection.
+	 * @param progressive True to detect lines one at a time, removing their points before sampling again (random samples only).
+	 */
+	public void setProgressive(boolean progressive) {
+		this.progressive = progressive;
+	}
+
+	/**
+	 * Get the progressive detection.
+	 * @return True if lines are detected one at a time.
+	 */
+	public boolean getProgressive() {
+		return this.progressive;
+	}
+
+	/**
+	 * Set the estimator of local models.
+	 * @param estimator Estimator of local models.
+	 */
+	public void setEstimator(LineEstimator estimator) {
+		this.estimator = estimator;
+	}
+
+	/**
+	 * Get the estimator of local models.
+	 * @return The estimator of local models.
+	 */
+	public LineEstimator getEstimator() {
+		return this.estimator;
+	}
+
+	/**
+	 * Set the engine finding the candidate points in Hough space.
+	 * @param engine Engine finding the candidate points (the accumulator uses all skeleton pixels).
+	 */
+	public void setEngine(HoughEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Get the engine finding the candidate points in Hough space.
+	 * @return The engine finding the candidate points.
+	 */
+	public HoughEngine getEngine() {
+		return this.engine;
+	}
+
+	/**
+	 * Set the size of quantization bins of Hough points for mean-shift.
+	 * @param binning Size of bins as a fraction of sensitivities (zero to disable binning).
+	 * @see MeanShift#setBinning(double)
+	 */
+	public void setBinning(double binning) {
+		this.binning = binning;
+	}
+
+	/**
+	 * Get the size of quantization bins of Hough points for mean-shift.
+	 * @return The size of bins as a fraction of sensitivities.
+	 */
+	public double getBinning() {
+		return this.binning;
+	}
+
+	/**
+	 * Set the strategy gathering the foreground points of the selected points when building segments.
+	 * @param builder Strategy gathering the foreground points (the progressive detection always uses the band of each line).
+	 */
+	public void setBuilder(SegmentBuilder builder) {
+		this.builder = builder;
+	}
+
+	/**
+	 * Get the strategy gathering the foreground points of the selected points when building segments.
+	 * @return The strategy gathering the foreground points.
+	 */
+	public SegmentBuilder getBuilder() {
+		return this.builder;
+	}
+
+	/**
+	 * Set the way gaps are found in the segments of each line.
+	 * @param projectedGaps True to find gaps on the projection of points on each line, false to sort the points.
+	 */
+	public void setProjectedGaps(boolean projectedGaps) {
+		this.projectedGaps = projectedGaps;
+	}
+
+	/**
+	 * Get the way gaps are found in the segments of each line.
+	 * @return True if gaps are found on the projection of points on each line, false if the points are sorted.
+	 */
+	public boolean getProjectedGaps() {
+		return this.projectedGaps;
+	}
+
+	/**
+	 * Set the merging of segments.
+	 * @param mergeSegments True to merge the overlapping or close collinear segments.
+	 */
+	public void setMergeSegments(boolean mergeSegments) {
+		this.mergeSegments = mergeSegments;
+	}
+
+	/**
+	 * Get the merging of segments.
+	 * @return True if the overlapping or close collinear segments are merged.
+	 */
+	public boolean getMergeSegments() {
+		return this.mergeSegments;
+	}
+
+	/**
+	 * Set the receiver of the segments of each line.
+	 * @param listener Receiver of the segments as soon as they are built, before merging, or null.
+	 */
+	public void setListener(SegmentListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Get the receiver of the segments of each line.
+	 * @return The receiver of the segments, or null.
+	 */
+	public SegmentListener getListener() {
+		return this.listener;
+	}
+
+	/**
+	 * Set the seed of random sampling.
+	 * @param seed Seed of random sampling.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Get the seed of random sampling.
+	 * @return The seed of random sampling.
+	 */
+	public long getSeed() {
+		return this.seed;
+	}
+
+	/**
+	 * Set the executor running the parallel tasks of all stages.
+	 * @param executor Executor (it is not shut down), or null to use a temporary pool.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the executor running the parallel tasks of all stages.
+	 * @return The executor, or null when a temporary pool is used.
+	 */
+	public ExecutorService getExecutor() {
+		return this.executor;
+	}
+}
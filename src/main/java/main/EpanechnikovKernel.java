@@ -0,0 +1,40 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+/**
+ * Epanechnikov kernel truncated at maxDomain.
+ * 
+ * The profile decreases linearly from 1 (at u^2 = 0) to 0 (at u^2 = maxDomain)
+ * and does not need any transcendental function.
+ * 
+ * @author julien.pontabry
+ */
+public class EpanechnikovKernel implements Kernel {
+	/** Pre-computed inverse of the support. */
+	protected static final double inverseMaxDomain = 1.0 / MeanShift.maxDomain;
+	
+	/**
+	 * @see main.Kernel#weight(double)
+	 */
+	@Override
+	public double weight(double u2) {
+		return 1.0 - u2 * EpanechnikovKernel.inverseMaxDomain;
+	}
+}
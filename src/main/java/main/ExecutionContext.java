@@ -0,0 +1,116 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ij.Prefs;
+
+/**
+ * Execution context shared by the parallel stages of the detection.
+ *
+ * The context owns a pool of threads of fixed parallelism, which is given
+ * to each stage of the pipeline, and shut down when the context is closed.
+ * It is meant to be used in a try-with-resources statement.
+ *
+ * @author julien.pontabry
+ */
+public class ExecutionContext implements AutoCloseable {
+	/** Maximal time to wait for running tasks when closing (in seconds). */
+	protected static final long terminationTimeout = 60;
+
+	/** Number of threads of the pool. */
+	protected final int threads;
+
+	/** Pool of threads. */
+	protected final ExecutorService executor;
+
+	/**
+	 * Default constructor.
+	 * The number of threads is given by ImageJ preferences.
+	 */
+	public ExecutionContext() {
+		this(Prefs.getThreads());
+	}
+
+	/**
+	 * Constructor.
+	 * @param threads Maximal number of threads running in parallel.
+	 */
+	public ExecutionContext(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least one!");
+
+		this.threads = threads;
+		this.executor = Executors.newWorkStealingPool(threads);
+	}
+
+	/**
+	 * Get the pool of threads.
+	 * @return The executor to give to the stages.
+	 */
+	public ExecutorService getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Get the number of threads of the pool.
+	 * @return Maximal number of threads running in parallel.
+	 */
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * Get the parallelism of an executor.
+	 * The stages cut their work in tasks from it, so that they do not create
+	 * more tasks than the threads of the context (the number of threads of
+	 * a context is the parallelism of its pool).
+	 * @param executor Executor running the parallel tasks.
+	 * @return The maximal number of threads of the executor (the number of cores when it is unknown).
+	 */
+	public static int getParallelism(ExecutorService executor) {
+		if (executor instanceof ForkJoinPool)
+			return ((ForkJoinPool)executor).getParallelism();
+		else if (executor instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor)executor).getMaximumPoolSize();
+		else
+			return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Shut down the pool of threads and wait for the running tasks.
+	 */
+	@Override
+	public void close() {
+		this.executor.shutdown();
+
+		try {
+			this.executor.awaitTermination(ExecutionContext.terminationTimeout, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			this.executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -20,17 +20,22 @@
 
 package main;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Vector;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
 import ij.IJ;
 import ij.ImageJ;
 import ij.ImagePlus;
+import ij.Prefs;
 import ij.WindowManager;
 import ij.gui.GenericDialog;
 import ij.gui.Line;
@@ -55,6 +60,12 @@ import coordinates.*;
  * @author Julien Pontabry
  */
 public class Extract_DNA_Fibers implements PlugInFilter {
+	/** Default seed of random sampling (identical inputs give identical outputs). */
+	public static final long defaultSeed = 42;
+	
+	/** Size of the tiles (in pixels) used when assigning points to many lines at once. */
+	protected static final int tileSize = 32;
+	
 	/** The input image. */
 	protected ImagePlus image = null;
 	
@@ -91,6 +102,42 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 	/** Half-size of the window used when estimating local models. */
 	protected int localWindowHalfSize = 25;
 
+	/** Estimator of local models. */
+	protected LineEstimator lineEstimator = LineEstimator.THEIL_SEN;
+
+	/** Engine finding the candidate points in Hough space. */
+	protected HoughEngine houghEngine = HoughEngine.MEAN_SHIFT;
+
+	/** Size of quantization bins of Hough points for mean-shift (as a fraction of tolerances, zero to disable binning). */
+	protected double binning = 0.1;
+
+	/** Maximal number of samples with adaptive sampling. */
+	protected int maxSamples = AdaptiveHoughSampling.defaultMaxSamples;
+
+	/** Strategy gathering the foreground points of the selected points when building segments. */
+	protected SegmentBuilder segmentBuilder = SegmentBuilder.LINE_BAND;
+
+	/** True to find gaps on the projection of points on each line (without sorting). */
+	protected boolean projectedGaps = false;
+
+	/** True to merge the overlapping or close collinear segments. */
+	protected boolean mergeSegments = false;
+
+	/** True to use the local models of all skeleton pixels instead of random samples. */
+	protected boolean useAllPixels = false;
+
+	/** True to sample by batches until the selected points are stable (the number of samples is the first batch size). */
+	protected boolean adaptiveSampling = false;
+
+	/** True to detect lines one at a time, removing their points before sampling again. */
+	protected boolean progressiveDetection = false;
+
+	/** Seed of random sampling. */
+	protected long seed = Extract_DNA_Fibers.defaultSeed;
+
+	/** Maximal number of threads used for detection. */
+	protected int numberOfThreads = Prefs.getThreads();
+
 	/**
 	 * @see ij.plugin.filter.PlugInFilter#setup(java.lang.String, ij.ImagePlus)
 	 */
@@ -110,13 +157,72 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 	@Override
 	public void run(ImageProcessor ip) {
 		if (this.showAndCheckDialog()) {
-			List<Line> segments = Extract_DNA_Fibers.detectFibers(this.image, this.thickness, this.firstChannel, this.secondChannel, 
-					this.numberOfPoints, this.angularSensitivity, this.thicknessSensitivity, this.selectionSensitivity,
-					this.maxSegmentGap, this.minSegmentLength, this.widthTolerance, this.localWindowHalfSize );
+			// Show the segments of each line as soon as they are built (after the ROIs already in the manager)
+			RoiManager manager = (RoiManager.getInstance() != null) ? RoiManager.getInstance() : new RoiManager();
+			int firstIndex = manager.getCount();
+			List<Line> builtSegments = new Vector<Line>();
+			SegmentListener listener = (line, lineSegments) -> {
+				for (Line l : lineSegments) {
+					builtSegments.add(l);
+					manager.addRoi(l);
+				}
+			};
 			
-			RoiManager manager = new RoiManager();
-			for (Line l : segments)
-				manager.addRoi(l);
+			// The segments are merged below, so that the segments already shown and left unchanged are kept
+			try (ExecutionContext context = new ExecutionContext(this.numberOfThreads)) {
+				DetectionOptions options = new DetectionOptions();
+				options.setAllPixels(this.useAllPixels);
+				options.setAdaptiveSampling(this.adaptiveSampling);
+				options.setMaxSamples(this.maxSamples);
+				options.setProgressive(this.progressiveDetection);
+				options.setEstimator(this.lineEstimator);
+				options.setEngine(this.houghEngine);
+				options.setBinning(this.binning);
+				options.setBuilder(this.segmentBuilder);
+				options.setProjectedGaps(this.projectedGaps);
+				options.setListener(listener);
+				options.setSeed(this.seed);
+				options.setExecutor(context.getExecutor());
+				
+				Extract_DNA_Fibers.detectFibers(this.image, this.thickness, this.firstChannel, this.secondChannel, 
+						this.numberOfPoints, this.angularSensitivity, this.thicknessSensitivity, this.selectionSensitivity,
+						this.maxSegmentGap, this.minSegmentLength, this.widthTolerance, this.localWindowHalfSize, options);
+			}
+			
+			if (this.mergeSegments) {
+				SegmentMerger merger = new SegmentMerger(this.angularSensitivity, this.thicknessSensitivity, this.maxSegmentGap);
+				List<Line> mergedSegments = merger.runWith(builtSegments, ImagePoint.getCenterPointOfImage(this.image));
+				int[] sources = merger.getSources();
+				
+				IJ.log("Segments merging: "+builtSegments.size()+" segments merged into "+mergedSegments.size()+" ("+merger.getNumberOfGroups()+" lines).");
+				
+				// Delete the segments shown by this run that are joined to others
+				boolean[] kept = new boolean[builtSegments.size()];
+				
+				for (int source : sources) {
+					if (source >= 0)
+						kept[source] = true;
+				}
+				
+				int[] indices = new int[builtSegments.size()];
+				int numberOfDeletedSegments = 0;
+				
+				for (int k = 0; k < kept.length; k++) {
+					if (!kept[k])
+						indices[numberOfDeletedSegments++] = firstIndex + k;
+				}
+				
+				if (numberOfDeletedSegments > 0) {
+					manager.setSelectedIndexes(Arrays.copyOf(indices, numberOfDeletedSegments));
+					manager.runCommand("Delete");
+				}
+				
+				// Show the joined segments
+				for (int i = 0; i < mergedSegments.size(); i++) {
+					if (sources[i] < 0)
+						manager.addRoi(mergedSegments.get(i));
+				}
+			}
 		}
 	}
 	
@@ -139,6 +245,62 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 	public static List<Line> detectFibers(ImagePlus input, double thickness, int startSlice, int endSlice, 
 			int numberOfPoints, double angularSensitivity, double thicknessSensitivity, double selectionSensitivity,
 			double maxSegmentGap, double minSegmentLength, double widthTolerance, int localWindowHalfSize) {
+		return Extract_DNA_Fibers.detectFibers(input, thickness, startSlice, endSlice, numberOfPoints, angularSensitivity,
+				thicknessSensitivity, selectionSensitivity, maxSegmentGap, minSegmentLength, widthTolerance, localWindowHalfSize, new DetectionOptions());
+	}
+	
+	/**
+	 * Single method for fibers detection in input image.
+	 * @param input Input image.
+	 * @param thickness Thickness in pixels of the fibers.
+	 * @param startSlice Project from this channel.
+	 * @param endSlice Project until this channel.
+	 * @param numberOfPoints Number of points to generate randomely in Hough space.
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 * @param selectionSensitivity Sensitivity to selection of candidates points (in [0,1]).
+	 * @param maxSegmentGap Maximum gap allowed between two segments (merge if smaller).
+	 * @param minSegmentLength Minimum length of a segment to be considered.
+	 * @param widthTolerance Maximal distance to the Hough line of a pixel to be considered as a part of a segment.
+	 * @param localWindowHalfSize Half size of the window used when estimating the local model.
+	 * @param options Options of the detection (sampling, estimator, engine, segments building and merging, listener, seed and executor).
+	 * @return A list of segments as Line ROI.
+	 * @see DetectionOptions
+	 */
+	public static List<Line> detectFibers(ImagePlus input, double thickness, int startSlice, int endSlice, 
+			int numberOfPoints, double angularSensitivity, double thicknessSensitivity, double selectionSensitivity,
+			double maxSegmentGap, double minSegmentLength, double widthTolerance, int localWindowHalfSize, DetectionOptions options) {
+		if (options.getExecutor() != null)
+			return Extract_DNA_Fibers.detectFibers(input, thickness, startSlice, endSlice, numberOfPoints, angularSensitivity, thicknessSensitivity,
+					selectionSensitivity, maxSegmentGap, minSegmentLength, widthTolerance, localWindowHalfSize, options, options.getExecutor());
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			return Extract_DNA_Fibers.detectFibers(input, thickness, startSlice, endSlice, numberOfPoints, angularSensitivity, thicknessSensitivity,
+					selectionSensitivity, maxSegmentGap, minSegmentLength, widthTolerance, localWindowHalfSize, options, context.getExecutor());
+		}
+	}
+	
+	/**
+	 * Single method for fibers detection in input image.
+	 * @param input Input image.
+	 * @param thickness Thickness in pixels of the fibers.
+	 * @param startSlice Project from this channel.
+	 * @param endSlice Project until this channel.
+	 * @param numberOfPoints Number of points to generate randomely in Hough space.
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 * @param selectionSensitivity Sensitivity to selection of candidates points (in [0,1]).
+	 * @param maxSegmentGap Maximum gap allowed between two segments (merge if smaller).
+	 * @param minSegmentLength Minimum length of a segment to be considered.
+	 * @param widthTolerance Maximal distance to the Hough line of a pixel to be considered as a part of a segment.
+	 * @param localWindowHalfSize Half size of the window used when estimating the local model.
+	 * @param options Options of the detection.
+	 * @param executor Executor running the parallel tasks of all stages (it is not shut down).
+	 * @return A list of segments as Line ROI.
+	 */
+	private static List<Line> detectFibers(ImagePlus input, double thickness, int startSlice, int endSlice, 
+			int numberOfPoints, double angularSensitivity, double thicknessSensitivity, double selectionSensitivity,
+			double maxSegmentGap, double minSegmentLength, double widthTolerance, int localWindowHalfSize, DetectionOptions options, ExecutorService executor) {
 		IJ.showProgress(0, 4);
 		ImagePlus skeletons = Extract_DNA_Fibers.extractSkeletons(input, startSlice, endSlice, thickness);
 		skeletons.hide();
@@ -148,13 +310,61 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 			input.setRoi(0, 0, input.getWidth(), input.getHeight());
 
 		IJ.showProgress(1, 4);
-		List<HoughPoint> houghPoints = Extract_DNA_Fibers.buildHoughSpaceFromSkeletons(skeletons, input.getRoi(), numberOfPoints, localWindowHalfSize);
-
-		IJ.showProgress(2, 4);
-		List<HoughPoint> selectedPoints = Extract_DNA_Fibers.selectHoughPoints(houghPoints, selectionSensitivity, angularSensitivity, thicknessSensitivity);
+		LocalModelSampler sampler = new LocalModelSampler(skeletons, input.getRoi(), localWindowHalfSize, options.getEstimator(), executor);
+		HoughSpace selectedPoints;
+		
+		if (options.getProgressive() && !options.getAllPixels()) {
+			ProgressiveHoughDetection detection = new ProgressiveHoughDetection(selectionSensitivity, angularSensitivity, thicknessSensitivity);
+			detection.setNumberOfPoints(numberOfPoints);
+			detection.setEngine(options.getEngine());
+			detection.setBinning(options.getBinning());
+			detection.setProjectedGaps(options.getProjectedGaps());
+			detection.setListener(options.getListener());
+			detection.setExecutor(executor);
+			
+			IJ.showProgress(2, 4);
+			List<Line> segments = detection.runWith(sampler, skeletons.getWidth(), skeletons.getHeight(), options.getSeed(), maxSegmentGap, minSegmentLength, widthTolerance);
+			
+			IJ.log("Progressive detection: "+detection.getLines().size+" lines with "+detection.getNumberOfSamples()+" samples.");
+			
+			if (options.getMergeSegments())
+				segments = Extract_DNA_Fibers.mergeSegments(segments, ImagePoint.getCenterPointOfImage(skeletons), angularSensitivity, thicknessSensitivity, maxSegmentGap);
+			
+			skeletons.close();
+			IJ.showProgress(4, 4);
+			
+			return segments;
+		}
+		else if (options.getAdaptiveSampling() && !options.getAllPixels() && options.getEngine() != HoughEngine.ACCUMULATOR) {
+			AdaptiveHoughSampling sampling = new AdaptiveHoughSampling(selectionSensitivity, angularSensitivity, thicknessSensitivity);
+			sampling.setBatchSize(numberOfPoints);
+			sampling.setMaxSamples(options.getMaxSamples());
+			sampling.setEngine(options.getEngine());
+			sampling.setBinning(options.getBinning());
+			sampling.setExecutor(executor);
+			selectedPoints = sampling.runWith(sampler, options.getSeed());
+			
+			IJ.log("Adaptive sampling: "+sampling.getNumberOfSamples()+" samples in "+sampling.getNumberOfBatches()+" batches"+
+					(sampling.hasConverged() ? "." : " (maximal number of samples reached)."));
+			IJ.showProgress(2, 4);
+		}
+		else {
+			HoughSpace houghPoints;
+			
+			if (options.getAllPixels() || options.getEngine() == HoughEngine.ACCUMULATOR)
+				houghPoints = Extract_DNA_Fibers.buildHoughSpace(sampler.estimateAll(executor));
+			else
+				houghPoints = sampler.sample(numberOfPoints, options.getSeed(), executor);
+			
+			IJ.showProgress(2, 4);
+			selectedPoints = Extract_DNA_Fibers.selectHoughPoints(houghPoints, selectionSensitivity, angularSensitivity, thicknessSensitivity, options, executor);
+		}
 		
 		IJ.showProgress(3, 4);
-		List<Line> segments = Extract_DNA_Fibers.buildSegments(skeletons, input.getRoi(), selectedPoints, maxSegmentGap, minSegmentLength, widthTolerance);
+		List<Line> segments = Extract_DNA_Fibers.buildSegments(skeletons, input.getRoi(), selectedPoints.toList(), maxSegmentGap, minSegmentLength, widthTolerance, options, executor);
+		
+		if (options.getMergeSegments())
+			segments = Extract_DNA_Fibers.mergeSegments(segments, ImagePoint.getCenterPointOfImage(skeletons), angularSensitivity, thicknessSensitivity, maxSegmentGap);
 		
 		skeletons.close();
 		IJ.showProgress(4, 4);
@@ -173,114 +383,486 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 	 * @return
 	 */
 	public static List<Line> buildSegments(ImagePlus binary, Roi roi, List<HoughPoint> selectedPoints, double maxGap, double minLength, double tolerance) {
-		// Precompute
-		double    maxGap2 = maxGap * maxGap;
-		double minLength2 = minLength * minLength;
+		return Extract_DNA_Fibers.buildSegments(binary, roi, selectedPoints, maxGap, minLength, tolerance, new DetectionOptions());
+	}
+	
+	/**
+	 * Build segments from binary image and list of selected points in Hough space.
+	 * 
+	 * The segments of each selected point are given to the listener of the
+	 * options as soon as they are built (in order of completion), so that the
+	 * first results can be shown before all lines are processed. The returned
+	 * list is still in order of selected points.
+	 * 
+	 * @param binary Input binary image of segments to detect.
+	 * @param roi Input roi.
+	 * @param selectedPoints Output of Hough space creation and accumulation.
+	 * @param maxGap Maximal allowed gap between two successive segments.
+	 * @param minLength Minimal allowed length of a segment.
+	 * @param tolerance Tolerance for pixel aggregation around line.
+	 * @param options Options of the detection (segments builder, projected gaps, listener and executor are used).
+	 * @return
+	 * @see SegmentListener
+	 * @see #buildSegments(ImagePointArray, HoughPoint, ImagePoint, double, double)
+	 */
+	public static List<Line> buildSegments(ImagePlus binary, Roi roi, List<HoughPoint> selectedPoints, double maxGap, double minLength, double tolerance, DetectionOptions options) {
+		if (options.getExecutor() != null)
+			return Extract_DNA_Fibers.buildSegments(binary, roi, selectedPoints, maxGap, minLength, tolerance, options, options.getExecutor());
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			return Extract_DNA_Fibers.buildSegments(binary, roi, selectedPoints, maxGap, minLength, tolerance, options, context.getExecutor());
+		}
+	}
+	
+	/**
+	 * Build segments from binary image and list of selected points in Hough space.
+	 * @param binary Input binary image of segments to detect.
+	 * @param roi Input roi.
+	 * @param selectedPoints Output of Hough space creation and accumulation.
+	 * @param maxGap Maximal allowed gap between two successive segments.
+	 * @param minLength Minimal allowed length of a segment.
+	 * @param tolerance Tolerance for pixel aggregation around line.
+	 * @param options Options of the detection.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return
+	 */
+	private static List<Line> buildSegments(ImagePlus binary, Roi roi, List<HoughPoint> selectedPoints, double maxGap, double minLength, double tolerance, DetectionOptions options, ExecutorService executor) {
+		boolean projectedGaps = options.getProjectedGaps();
+		SegmentListener listener = options.getListener();
 		
 		// Setup list of foreground pixels' coordinates in coordinate system with origin centered.
 		ImagePoint origin = ImagePoint.getCenterPointOfImage(binary);
-		List<ImagePoint> foregroundPoints = ImagePoint.getImageForegroundPoints(binary, roi, origin);
+		ImagePointArray foregroundPoints = ImagePoint.getImageForegroundPointArray(binary, roi, origin, executor);
 		
 		// Setup generation functions to be executed in parallel
 		List<Callable<List<Line>>> tasks = new Vector<>();
 
-		IntStream.range(0, selectedPoints.size()).forEach(k -> {
-			tasks.add(() -> {
-				HoughPoint peak = selectedPoints.get(k);
-
-				// Precompute
-				double cosTheta = Math.cos(peak.theta);
-				double sinTheta = Math.sin(peak.theta);
-
-				// Keep only associated points with that particular peak and compute range
-				List<ImagePoint> associatedPoints = new Vector<ImagePoint>();
-				int minX = binary.getWidth(), maxX = 0;
-				int minY = binary.getHeight(), maxY = 0;
-
-				for (ImagePoint p : foregroundPoints) {
-					double rho = p.x * cosTheta + p.y * sinTheta;
-
-					if (peak.rho-tolerance <= rho && rho <= peak.rho+tolerance) {
-						associatedPoints.add(p);
-
-						if (p.x < minX)
-							minX = p.x;
-						else if (p.x > maxX)
-							maxX = p.x;
+		if (options.getBuilder() == SegmentBuilder.SINGLE_PASS) {
+			List<ImagePointArray> linePoints = Extract_DNA_Fibers.selectLinePoints(foregroundPoints, origin, binary.getWidth(), binary.getHeight(), selectedPoints, tolerance, executor);
+			
+			IntStream.range(0, selectedPoints.size()).forEach(k -> {
+				tasks.add(() -> projectedGaps ?
+						Extract_DNA_Fibers.buildSegments(linePoints.get(k), selectedPoints.get(k), origin, maxGap, minLength) :
+						Extract_DNA_Fibers.buildSegments(linePoints.get(k), origin, binary.getWidth(), binary.getHeight(), maxGap, minLength));
+			});
+		}
+		else {
+			boolean[] bitmap = Extract_DNA_Fibers.getBitmap(foregroundPoints, origin, binary.getWidth(), binary.getHeight());
+			
+			IntStream.range(0, selectedPoints.size()).forEach(k -> {
+				tasks.add(() -> {
+					ImagePointArray linePoints = Extract_DNA_Fibers.selectLinePoints(bitmap, origin, binary.getWidth(), binary.getHeight(), selectedPoints.get(k), tolerance);
+					
+					return projectedGaps ?
+							Extract_DNA_Fibers.buildSegments(linePoints, selectedPoints.get(k), origin, maxGap, minLength) :
+							Extract_DNA_Fibers.buildSegments(linePoints, origin, binary.getWidth(), binary.getHeight(), maxGap, minLength);
+				});
+			});
+		}
 
-						if (p.y < minY)
-							minY = p.y;
-						else if (p.y > maxY)
-							maxY = p.y;
+		// Run threads in parallel and deliver results in order of completion
+		CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+		List<Future<Integer>>         futures = new Vector<Future<Integer>>();
+		List<List<Line>>              results = new Vector<List<Line>>(Collections.nCopies(tasks.size(), null));
+		
+		IntStream.range(0, tasks.size()).forEach(k -> {
+			futures.add(completion.submit(() -> {
+				results.set(k, tasks.get(k).call());
+				return k;
+			}));
+		});
+		
+		try {
+			for (int i = 0; i < tasks.size(); i++) {
+				int k = completion.take().get();
+				
+				if (listener != null)
+					listener.segmentsBuilt(selectedPoints.get(k), results.get(k));
+			}
+		}
+		catch (Exception e) {
+			IJ.error("Exception", "An exception occured!\n" + e.getMessage());
+		}
+		finally {
+			for (Future<Integer> future : futures)
+				future.cancel(true);
+		}
+		
+		// Reduce results in order of selected points
+		List<Line> allSegments = new Vector<Line>();
+		
+		for (List<Line> segments : results) {
+			if (segments != null)
+				allSegments.addAll(segments);
+		}
+		
+		return allSegments;
+	}
+	
+	/**
+	 * Get the bitmap of points.
+	 * @param points Input points (in coordinate system with origin centered).
+	 * @param origin Origin of the coordinate system of points in image.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @return The bitmap of the image (true at points).
+	 */
+	public static boolean[] getBitmap(ImagePointArray points, ImagePoint origin, int width, int height) {
+		boolean[] bitmap = new boolean[width * height];
+		
+		for (int i = 0; i < points.size; i++)
+			bitmap[(points.y[i] + origin.y) * width + points.x[i] + origin.x] = true;
+		
+		return bitmap;
+	}
+	
+	/**
+	 * Select the points within tolerance of a line.
+	 * 
+	 * The band of the line is rasterized row by row: on each row, only the
+	 * pixels whose distance to the line may be at most the tolerance are
+	 * visited, so the cost is proportional to the area of the band within
+	 * the image rather than to the number of points.
+	 * 
+	 * @param bitmap Bitmap of the points in image.
+	 * @param origin Origin of the coordinate system of points in image.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @param peak Line as a point in Hough space.
+	 * @param tolerance Tolerance for pixel aggregation around line.
+	 * @return The points whose distance to the line is at most the tolerance (in coordinate system with origin centered and row-major order).
+	 * @see #getBitmap(ImagePointArray, ImagePoint, int, int)
+	 */
+	public static ImagePointArray selectLinePoints(boolean[] bitmap, ImagePoint origin, int width, int height, HoughPoint peak, double tolerance) {
+		// Precompute
+		double cosTheta = Math.cos(peak.theta);
+		double sinTheta = Math.sin(peak.theta);
+		double   minRho = peak.rho - tolerance;
+		double   maxRho = peak.rho + tolerance;
+		
+		ImagePointArray associatedPoints = new ImagePointArray();
+		
+		for (int r = 0; r < height; r++) {
+			int y = r - origin.y;
+			double rowRho = y * sinTheta;
+			
+			// Range of columns of the band on this row (with a margin for rounding,
+			// which is large for nearly horizontal lines)
+			int minColumn = 0, maxColumn = width-1;
+			
+			if (Double.compare(cosTheta, 0.0) != 0) {
+				double x1 = (minRho - rowRho) / cosTheta, x2 = (maxRho - rowRho) / cosTheta;
+				double margin = 1.0 + 2.0 * Math.ulp(Math.abs(rowRho) + Math.abs(peak.rho) + tolerance) / Math.abs(cosTheta);
+				minColumn = (int)Math.max(minColumn, Math.floor(Math.min(x1, x2) - margin) + origin.x);
+				maxColumn = (int)Math.min(maxColumn, Math.ceil(Math.max(x1, x2) + margin) + origin.x);
+			}
+			
+			for (int c = minColumn, offset = r * width; c <= maxColumn; c++) {
+				if (!bitmap[offset + c])
+					continue;
+				
+				int x = c - origin.x;
+				double rho = x * cosTheta + rowRho;
+				
+				if (minRho <= rho && rho <= maxRho)
+					associatedPoints.add(x, y);
+			}
+		}
+		
+		return associatedPoints;
+	}
+	
+	/**
+	 * Select the points within tolerance of each line in a single pass.
+	 * 
+	 * The image is divided in square tiles and the lines whose band crosses
+	 * each tile are listed first. The points are then assigned in parallel
+	 * (by groups of successive points), each point being only tested against
+	 * the lines of its tile, into primitive buffers of each group which are
+	 * concatenated at the end.
+	 * 
+	 * @param points Input points (in coordinate system with origin centered and row-major order).
+	 * @param origin Origin of the coordinate system of points in image.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @param peaks Lines as points in Hough space.
+	 * @param tolerance Tolerance for pixel aggregation around line.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return The points whose distance to each line is at most the tolerance (in the order of input points).
+	 */
+	public static List<ImagePointArray> selectLinePoints(ImagePointArray points, ImagePoint origin, int width, int height, List<HoughPoint> peaks, double tolerance, ExecutorService executor) {
+		int numberOfPeaks = peaks.size();
+		double[] cosThetas = new double[numberOfPeaks], sinThetas = new double[numberOfPeaks], rhos = new double[numberOfPeaks];
+		
+		for (int k = 0; k < numberOfPeaks; k++) {
+			HoughPoint peak = peaks.get(k);
+			cosThetas[k] = Math.cos(peak.theta);
+			sinThetas[k] = Math.sin(peak.theta);
+			rhos[k] = peak.rho;
+		}
+		
+		// List the lines crossing each tile (the distance of the tile center
+		// to the line is at most the tolerance plus half the tile diagonal)
+		int tileColumns = (width + Extract_DNA_Fibers.tileSize - 1) / Extract_DNA_Fibers.tileSize;
+		int tileRows = (height + Extract_DNA_Fibers.tileSize - 1) / Extract_DNA_Fibers.tileSize;
+		double maxDistance = tolerance + Math.sqrt(0.5) * Extract_DNA_Fibers.tileSize + 1.0;
+		int[][] tilePeaks = new int[tileColumns * tileRows][];
+		int[] buffer = new int[numberOfPeaks];
+		
+		for (int r = 0; r < tileRows; r++) {
+			for (int c = 0; c < tileColumns; c++) {
+				double x = (c + 0.5) * Extract_DNA_Fibers.tileSize - origin.x;
+				double y = (r + 0.5) * Extract_DNA_Fibers.tileSize - origin.y;
+				int n = 0;
+				
+				for (int k = 0; k < numberOfPeaks; k++) {
+					if (Math.abs(x * cosThetas[k] + y * sinThetas[k] - rhos[k]) <= maxDistance)
+						buffer[n++] = k;
+				}
+				
+				tilePeaks[r * tileColumns + c] = Arrays.copyOf(buffer, n);
+			}
+		}
+		
+		// Setup assignment functions to be executed in parallel (by groups of successive points)
+		List<Callable<ImagePointArray[]>> tasks = new Vector<>();
+		int groupSize = Math.max(1, points.size / (4*ExecutionContext.getParallelism(executor)));
+		
+		for (int i = 0; i < points.size; i += groupSize) {
+			final int startIndex = i;
+			final int   endIndex = Math.min(i+groupSize, points.size);
+			
+			tasks.add(() -> {
+				ImagePointArray[] linePoints = new ImagePointArray[numberOfPeaks];
+				
+				for (int j = startIndex; j < endIndex; j++) {
+					int x = points.x[j], y = points.y[j];
+					int[] candidates = tilePeaks[((y + origin.y) / Extract_DNA_Fibers.tileSize) * tileColumns + (x + origin.x) / Extract_DNA_Fibers.tileSize];
+					
+					for (int k : candidates) {
+						double rho = x * cosThetas[k] + y * sinThetas[k];
+						
+						if (rhos[k]-tolerance <= rho && rho <= rhos[k]+tolerance) {
+							if (linePoints[k] == null)
+								linePoints[k] = new ImagePointArray();
+							
+							linePoints[k].add(x, y);
+						}
 					}
 				}
+				
+				return linePoints;
+			});
+		}
+		
+		// Run threads in parallel and concatenate buffers (in order of groups)
+		List<ImagePointArray> results = new Vector<ImagePointArray>(numberOfPeaks);
+		
+		for (int k = 0; k < numberOfPeaks; k++)
+			results.add(new ImagePointArray());
+		
+		try {
+			for (Future<ImagePointArray[]> future : executor.invokeAll(tasks)) {
+				ImagePointArray[] linePoints = future.get();
+				
+				for (int k = 0; k < numberOfPeaks; k++) {
+					if (linePoints[k] != null)
+						results.get(k).addAll(linePoints[k]);
+				}
+			}
+		}
+		catch (Exception e) {
+			IJ.error("Exception", "An exception occured!\n" + e.getMessage());
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Build the segments of the points associated to a line.
+	 * @param associatedPoints Points associated to the line (they are reordered).
+	 * @param origin Origin of the coordinate system of points in image.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @param maxGap Maximal allowed gap between two successive segments.
+	 * @param minLength Minimal allowed length of a segment.
+	 * @return The segments (in image coordinate system).
+	 */
+	public static List<Line> buildSegments(ImagePointArray associatedPoints, ImagePoint origin, int width, int height, double maxGap, double minLength) {
+		// Precompute
+		double    maxGap2 = maxGap * maxGap;
+		double minLength2 = minLength * minLength;
+		
+		// Compute range
+		int minX = width, maxX = 0;
+		int minY = height, maxY = 0;
 
-				// Sort coordinates by in direction of major coordinates change
-				final int factor = (maxX-minX < maxY-minY) ? -1 : 1;
+		for (int i = 0; i < associatedPoints.size; i++) {
+			int x = associatedPoints.x[i], y = associatedPoints.y[i];
 
-				associatedPoints.sort((o1,o2) -> {
-					if (o1.x == o2.x)
-						return factor * (o1.y - o2.y);
-					else // o1.x != o2.x
-						return factor * (o1.x - o2.x);
-				});
+			if (x < minX)
+				minX = x;
+			else if (x > maxX)
+				maxX = x;
 
-				// Creates list of point indices describing gaps
-				List<Integer> indices = new Vector<Integer>();
-				indices.add(-1);
+			if (y < minY)
+				minY = y;
+			else if (y > maxY)
+				maxY = y;
+		}
 
-				for (int i = 0; i < associatedPoints.size()-1; i++) {
-					double distance = associatedPoints.get(i).squaredDistanceToPoint(associatedPoints.get(i+1));
+		// Sort coordinates by in direction of major coordinates change
+		// (points are packed into keys ordered by x then y, and read
+		// backward when the order has to be reversed)
+		final boolean reversed = (maxX-minX < maxY-minY);
+		
+		long[] keys = new long[associatedPoints.size];
+		for (int i = 0; i < associatedPoints.size; i++)
+			keys[i] = ((long)associatedPoints.x[i] << 32) | ((associatedPoints.y[i] ^ 0x80000000) & 0xffffffffL);
+		
+		Arrays.sort(keys);
+		
+		if (reversed) {
+			for (int i = 0, j = keys.length-1; i < j; i++, j--) {
+				long tmp = keys[i]; keys[i] = keys[j]; keys[j] = tmp;
+			}
+		}
+		
+		for (int i = 0; i < keys.length; i++) {
+			associatedPoints.x[i] = (int)(keys[i] >> 32);
+			associatedPoints.y[i] = (int)keys[i] ^ 0x80000000;
+		}
 
-					if (distance > maxGap2)
-						indices.add(i);
-				}
+		// Creates list of point indices describing gaps
+		List<Integer> indices = new Vector<Integer>();
+		indices.add(-1);
 
-				indices.add(associatedPoints.size()-1);
+		for (int i = 0; i < associatedPoints.size-1; i++) {
+			int dx = associatedPoints.x[i+1] - associatedPoints.x[i];
+			int dy = associatedPoints.y[i+1] - associatedPoints.y[i];
 
-				// Accumulate segments
-				List<Line> segments = new Vector<Line>();
+			if (dx*dx + dy*dy > maxGap2)
+				indices.add(i);
+		}
 
-				if (associatedPoints.size() > 0) {
-					for (int i = 0; i < indices.size()-1; i++) {
-						ImagePoint p1 = new ImagePoint(associatedPoints.get(indices.get(i)+1));
-						ImagePoint p2 = new ImagePoint(associatedPoints.get(indices.get(i+1)));
-	
-						if (p1.squaredDistanceToPoint(p2) >= minLength2) {
-							p1.add(origin); p2.add(origin);
-							segments.add(new Line(p1.x, p1.y, p2.x, p2.y));
-						}
-					}
-				}
-				
-				return segments;
-			});
-		});
+		indices.add(associatedPoints.size-1);
 
-		// Run threads in parallel and reduce results
-		List<Line>   allSegments = new Vector<Line>();
-		ExecutorService executor = Executors.newWorkStealingPool();
+		// Accumulate segments
+		List<Line> segments = new Vector<Line>();
 
-		try {
-			executor.invokeAll(tasks)
-			.stream()
-			.map(future -> {
-				try {
-					return future.get();
-				}
-				catch (Exception e) {
-					throw new IllegalStateException(e);
+		if (associatedPoints.size > 0) {
+			for (int i = 0; i < indices.size()-1; i++) {
+				ImagePoint p1 = associatedPoints.get(indices.get(i)+1);
+				ImagePoint p2 = associatedPoints.get(indices.get(i+1));
+	
+				if (p1.squaredDistanceToPoint(p2) >= minLength2) {
+					p1.add(origin); p2.add(origin);
+					segments.add(new Line(p1.x, p1.y, p2.x, p2.y));
 				}
-			})
-			.forEach(segments -> {
-				allSegments.addAll(segments);
-			});
+			}
 		}
-		catch (Exception e) {
-			IJ.error("Exception", "An exception occured!\n" + e.getMessage());
+		
+		return segments;
+	}
+	
+	/**
+	 * Build the segments of the points associated to a line without sorting.
+	 * 
+	 * The points are projected on the direction of the line and the first
+	 * point of each position (rounded to pixels) is kept in a 1D occupancy
+	 * array over the length of the line. The successive occupied positions
+	 * are then walked once: a gap is found when the distance between their
+	 * points is larger than the maximal gap. The time is linear in the number
+	 * of points and the length of the line.
+	 * 
+	 * @param associatedPoints Points associated to the line.
+	 * @param peak Line as a point in Hough space.
+	 * @param origin Origin of the coordinate system of points in image.
+	 * @param maxGap Maximal allowed gap between two successive segments.
+	 * @param minLength Minimal allowed length of a segment.
+	 * @return The segments (in image coordinate system), oriented along the direction of the line.
+	 */
+	public static List<Line> buildSegments(ImagePointArray associatedPoints, HoughPoint peak, ImagePoint origin, double maxGap, double minLength) {
+		// Precompute
+		double    maxGap2 = maxGap * maxGap;
+		double minLength2 = minLength * minLength;
+		double   cosTheta = Math.cos(peak.theta);
+		double   sinTheta = Math.sin(peak.theta);
+		
+		List<Line> segments = new Vector<Line>();
+		
+		if (associatedPoints.isEmpty())
+			return segments;
+		
+		// Project points on the direction of the line (-sin,cos)
+		int[] positions = new int[associatedPoints.size];
+		int minPosition = Integer.MAX_VALUE, maxPosition = Integer.MIN_VALUE;
+		
+		for (int i = 0; i < associatedPoints.size; i++) {
+			positions[i] = (int)Math.round(associatedPoints.y[i] * cosTheta - associatedPoints.x[i] * sinTheta);
+			minPosition = Math.min(minPosition, positions[i]);
+			maxPosition = Math.max(maxPosition, positions[i]);
 		}
 		
-		return allSegments;
+		// Mark occupancy (first point of each position, -1 when empty)
+		int[] occupancy = new int[maxPosition - minPosition + 1];
+		Arrays.fill(occupancy, -1);
+		
+		for (int i = 0; i < associatedPoints.size; i++) {
+			int t = positions[i] - minPosition;
+			
+			if (occupancy[t] < 0)
+				occupancy[t] = i;
+		}
+		
+		// Walk the runs of occupied positions (separated by gaps)
+		int first = occupancy[0], previous = first;
+		
+		for (int t = 1; t <= occupancy.length; t++) {
+			int current = (t < occupancy.length) ? occupancy[t] : -1;
+			
+			if (current < 0 && t < occupancy.length)
+				continue;
+			
+			boolean end = (current < 0);
+			
+			if (!end) {
+				int dx = associatedPoints.x[current] - associatedPoints.x[previous];
+				int dy = associatedPoints.y[current] - associatedPoints.y[previous];
+				end = (dx*dx + dy*dy > maxGap2);
+			}
+			
+			if (end) {
+				int dx = associatedPoints.x[previous] - associatedPoints.x[first];
+				int dy = associatedPoints.y[previous] - associatedPoints.y[first];
+				
+				if (dx*dx + dy*dy >= minLength2)
+					segments.add(new Line(associatedPoints.x[first] + origin.x, associatedPoints.y[first] + origin.y,
+							associatedPoints.x[previous] + origin.x, associatedPoints.y[previous] + origin.y));
+				
+				first = current;
+			}
+			
+			previous = current;
+		}
+		
+		return segments;
+	}
+	
+	/**
+	 * Merge the overlapping or close collinear segments.
+	 * @param segments Input segments (in image coordinate system).
+	 * @param origin Origin of the coordinate system of lines in Hough space.
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 * @param maxGap Maximal gap allowed between two merged segments.
+	 * @return The merged segments.
+	 * @see SegmentMerger
+	 */
+	public static List<Line> mergeSegments(List<Line> segments, ImagePoint origin, double angularSensitivity, double thicknessSensitivity, double maxGap) {
+		SegmentMerger merger = new SegmentMerger(angularSensitivity, thicknessSensitivity, maxGap);
+		
+		return merger.runWith(segments, origin);
 	}
 	
 	/**
@@ -292,41 +874,115 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 	 * @return Selection of points in Hough space based on number of contributing points in neighborhood.
 	 */
 	public static List<HoughPoint> selectHoughPoints(List<HoughPoint> houghPoints, double selectionSensitivity, double angularSensitivity, double thicknessSensitivity) {
-		// Compute range and bandwidths
-		double       minValue = -Math.PI/2.0;
-		double       maxValue = Math.PI/2.0;
+		return Extract_DNA_Fibers.selectHoughPoints(new HoughSpace(houghPoints), selectionSensitivity, angularSensitivity, thicknessSensitivity, new DetectionOptions()).toList();
+	}
+	
+	/**
+	 * Select points among candidates in Hough space based on neighborhood count.
+	 * 
+	 * With the mean-shift engine, the count of a mode is the number of points
+	 * converging to it. With the accumulator engine, the points vote in bins
+	 * of half the sensitivities and the count of a peak is the number of votes
+	 * within the sensitivities. With the kernel density engine, the density is
+	 * estimated on a grid and the count of a mode is the number of points in
+	 * its basin (the binning parameter is only used by mean-shift).
+	 * 
+	 * @param houghPoints Input points in Hough space.
+	 * @param selectionSensitivity Sensitivity to selection of candidates points (in [0,1]).
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 * @param options Options of the detection (engine, binning and executor are used).
+	 * @return Selection of points in Hough space based on number of contributing points in neighborhood.
+	 * @see MeanShift#setBinning(double)
+	 * @see HoughAccumulator
+	 * @see KernelDensityGrid
+	 */
+	public static HoughSpace selectHoughPoints(HoughSpace houghPoints, double selectionSensitivity, double angularSensitivity, double thicknessSensitivity, DetectionOptions options) {
+		if (options.getExecutor() != null)
+			return Extract_DNA_Fibers.selectHoughPoints(houghPoints, selectionSensitivity, angularSensitivity, thicknessSensitivity, options, options.getExecutor());
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			return Extract_DNA_Fibers.selectHoughPoints(houghPoints, selectionSensitivity, angularSensitivity, thicknessSensitivity, options, context.getExecutor());
+		}
+	}
+	
+	/**
+	 * Select points among candidates in Hough space based on neighborhood count.
+	 * @param houghPoints Input points in Hough space.
+	 * @param selectionSensitivity Sensitivity to selection of candidates points (in [0,1]).
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 * @param options Options of the detection.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return Selection of points in Hough space based on number of contributing points in neighborhood.
+	 */
+	private static HoughSpace selectHoughPoints(HoughSpace houghPoints, double selectionSensitivity, double angularSensitivity, double thicknessSensitivity, DetectionOptions options, ExecutorService executor) {
+		HoughEngine engine = options.getEngine();
+		
+		if (engine == HoughEngine.ACCUMULATOR) {
+			HoughAccumulator accumulator = new HoughAccumulator(new HoughPoint(angularSensitivity * Math.PI/180.0, thicknessSensitivity));
+			accumulator.setExecutor(executor);
+			
+			return Extract_DNA_Fibers.selectCandidates(accumulator.runWith(houghPoints), accumulator.getScores(), selectionSensitivity);
+		}
+		else if (engine == HoughEngine.KERNEL_DENSITY) {
+			KernelDensityGrid density = new KernelDensityGrid(new HoughPoint(angularSensitivity * Math.PI/180.0, thicknessSensitivity));
+			density.setExecutor(executor);
+			
+			return Extract_DNA_Fibers.selectCandidates(density.runWith(houghPoints), density.getScores(), selectionSensitivity);
+		}
+		
+		// Compute bandwidths
 		double thetaBandwidth = angularSensitivity * Math.PI/180.0;
 		double   rhoBandwidth = thicknessSensitivity;
 		
-		// Manage borders
-		List<HoughPoint> replicatedHoughPoints = Extract_DNA_Fibers.replicateHoughSpaceBorders(houghPoints, thetaBandwidth, maxValue, minValue, true);
-		
-		// Find modes
+		// Find modes (the angular axis is periodic, which avoids border effects)
 		MeanShift modesFinder = new MeanShift(new HoughPoint(thetaBandwidth, rhoBandwidth));
-		modesFinder.runWith(replicatedHoughPoints);
-		List<HoughPoint> modes = modesFinder.getModes();
-		List<Integer>   labels = modesFinder.getLabels();
+		modesFinder.setBinning(options.getBinning());
+		modesFinder.setPeriodic(true);
+		modesFinder.setExecutor(executor);
+		modesFinder.runWith(houghPoints);
+		HoughSpace modes = modesFinder.getModesSpace();
 		
-		// Get counts and maximal count
-		int[] counts = new int[modes.size()];
-		for (Integer i : labels)
-			counts[i]++;
+		// No mode when the process failed
+		if (houghPoints.labels == null || houghPoints.labels.length != houghPoints.size)
+			return new HoughSpace();
+		
+		// Get counts
+		int[] counts = new int[modes.size];
+		for (int i = 0; i < houghPoints.size; i++)
+			counts[houghPoints.labels[i]]++;
+		
+		return Extract_DNA_Fibers.selectCandidates(modes, counts, selectionSensitivity);
+	}
+	
+	/**
+	 * Select candidate points based on their count relatively to the maximal count.
+	 * @param candidates Candidate points in Hough space.
+	 * @param counts Number of contributing points of each candidate.
+	 * @param selectionSensitivity Sensitivity to selection of candidates points (in [0,1]).
+	 * @return Selection of candidates (within angular range) whose count is greater than the sensitivity times the maximal count.
+	 */
+	private static HoughSpace selectCandidates(HoughSpace candidates, int[] counts, double selectionSensitivity) {
+		double minValue = -Math.PI/2.0;
+		double maxValue = Math.PI/2.0;
 		
+		// Get maximal count
 		int maximalCount = 0;
-		for (Integer count : counts) {
+		for (int count : counts) {
 			if (count > maximalCount)
 				maximalCount = count;
 		} 
 		
 		// Select candidate points (keep points within range)
-		List<HoughPoint> selectedPoint = new Vector<HoughPoint>();
-		for (int i = 0; i < modes.size(); i++) {
+		HoughSpace selectedPoints = new HoughSpace();
+		for (int i = 0; i < candidates.size; i++) {
 			if (counts[i] > selectionSensitivity*maximalCount &&
-				Double.compare(modes.get(i).theta, minValue) > 0 && Double.compare(modes.get(i).theta, maxValue) < 0)
-				selectedPoint.add(modes.get(i));
+				Double.compare(candidates.theta[i], minValue) > 0 && Double.compare(candidates.theta[i], maxValue) < 0)
+				selectedPoints.add(candidates.theta[i], candidates.rho[i]);
 		}
 		
-		return selectedPoint;
+		return selectedPoints;
 	}
 	
 	/**
@@ -340,7 +996,21 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 	 * @return Input points with replicated borders.
 	 */
 	public static List<HoughPoint> replicateHoughSpaceBorders(List<HoughPoint> houghPoints, double angularBandwidth, double supBound, double infBound, boolean inverse) {
-		List<HoughPoint> replicatedHoughPoints = new Vector<HoughPoint>();
+		return Extract_DNA_Fibers.replicateHoughSpaceBorders(new HoughSpace(houghPoints), angularBandwidth, supBound, infBound, inverse).toList();
+	}
+	
+	/**
+	 * Replicate borders of Hough space on angular axis (Theta).
+	 * This operation is needed to avoid border effects when detecting points.
+	 * @param houghPoints Input points.
+	 * @param angularBandwidth Bandwidth for peak detection on angular axis.
+	 * @param supBound Upper bound of angular axis.
+	 * @param infBound Lower bound of angular axis.
+	 * @param inverse True to inverse the other axis.
+	 * @return Input points with replicated borders.
+	 */
+	public static HoughSpace replicateHoughSpaceBorders(HoughSpace houghPoints, double angularBandwidth, double supBound, double infBound, boolean inverse) {
+		HoughSpace replicatedHoughPoints = new HoughSpace(houghPoints.size);
 		replicatedHoughPoints.addAll(houghPoints);
 		
 		// range of angles
@@ -352,12 +1022,14 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 			factor = -1.0;
 		
 		// Add symmetric points
-		for (HoughPoint p : houghPoints) {
-			if (Double.compare(p.theta, supBound - 5.0*angularBandwidth) >= 0)
-				replicatedHoughPoints.add(new HoughPoint(p.theta-angularRange, factor*p.rho));
+		for (int i = 0; i < houghPoints.size; i++) {
+			double theta = houghPoints.theta[i], rho = houghPoints.rho[i];
+			
+			if (Double.compare(theta, supBound - 5.0*angularBandwidth) >= 0)
+				replicatedHoughPoints.add(theta-angularRange, factor*rho);
 			
-			if (Double.compare(p.theta, infBound + 5.0*angularBandwidth) <= 0)
-				replicatedHoughPoints.add(new HoughPoint(p.theta+angularRange, factor*p.rho));
+			if (Double.compare(theta, infBound + 5.0*angularBandwidth) <= 0)
+				replicatedHoughPoints.add(theta+angularRange, factor*rho);
 		}
 		
 		return replicatedHoughPoints;
@@ -415,65 +1087,113 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 	 * @param skeletons Input skeletons image (binary).
 	 * @param roi Input roi.
 	 * @param numberOfPoints Number of points to sample.
+	 * @param windowSize Half size of the window used when estimating the local model.
 	 * @return A list of Hough points
 	 */
 	public static List<HoughPoint> buildHoughSpaceFromSkeletons(ImagePlus skeletons, Roi roi, int numberOfPoints, int windowSize) {
-		// Setup list of foreground pixels' coordinates in coordinate system with origin centered.
-		ImagePoint origin = ImagePoint.getCenterPointOfImage(skeletons);
-		List<ImagePoint> foregroundPoints = ImagePoint.getImageForegroundPoints(skeletons, roi, origin);
+		return Extract_DNA_Fibers.buildHoughSpace(skeletons, roi, numberOfPoints, windowSize, new DetectionOptions()).toList();
+	}
+	
+	/**
+	 * Set points in Hough space from skeleton image.
+	 * 
+	 * The Hough points are constructed from at most <code>numberOfPoints</code> 
+	 * randomly sampled foreground points in image space and their neighborhood.
+	 * 
+	 * Each parallel task draws its samples from its own generator, split from
+	 * a generator of given seed, so the result only depends on the inputs.
+	 * 
+	 * The image space is defined to have origin at image center.
+	 * 
+	 * @param skeletons Input skeletons image (binary).
+	 * @param roi Input roi.
+	 * @param numberOfPoints Number of points to sample.
+	 * @param windowSize Half size of the window used when estimating the local model.
+	 * @param options Options of the detection (estimator, seed and executor are used).
+	 * @return The Hough points.
+	 */
+	public static HoughSpace buildHoughSpace(ImagePlus skeletons, Roi roi, int numberOfPoints, int windowSize, DetectionOptions options) {
+		if (options.getExecutor() != null)
+			return new LocalModelSampler(skeletons, roi, windowSize, options.getEstimator(), options.getExecutor()).sample(numberOfPoints, options.getSeed(), options.getExecutor());
 		
-		// Setup random generator
-		Random generator = new Random();
+		try (ExecutionContext context = new ExecutionContext()) {
+			return new LocalModelSampler(skeletons, roi, windowSize, options.getEstimator(), context.getExecutor()).sample(numberOfPoints, options.getSeed(), context.getExecutor());
+		}
+	}
+	
+	/**
+	 * Compute the local model of every foreground point of skeleton image.
+	 * 
+	 * The local line (in Hough space) of each foreground point is estimated
+	 * exactly once, in parallel. The field is given in the order of the
+	 * foreground points (row-major order) and the points without neighbors
+	 * have NaN coordinates.
+	 * 
+	 * The image space is defined to have origin at image center.
+	 * 
+	 * @param skeletons Input skeletons image (binary).
+	 * @param roi Input roi.
+	 * @param windowSize Half size of the window used when estimating the local model.
+	 * @param options Options of the detection (estimator and executor are used).
+	 * @return The orientation field as points in Hough space (one per foreground point).
+	 * @see ImagePoint#getImageForegroundPointArray(ImagePlus, Roi, ImagePoint, ExecutorService)
+	 */
+	public static HoughSpace buildOrientationField(ImagePlus skeletons, Roi roi, int windowSize, DetectionOptions options) {
+		if (options.getExecutor() != null)
+			return new LocalModelSampler(skeletons, roi, windowSize, options.getEstimator(), options.getExecutor()).estimateAll(options.getExecutor());
 		
-		// Setup generation functions to be executed in parallel
-		List<Callable<HoughPoint>> tasks = new Vector<>();
+		try (ExecutionContext context = new ExecutionContext()) {
+			return new LocalModelSampler(skeletons, roi, windowSize, options.getEstimator(), context.getExecutor()).estimateAll(context.getExecutor());
+		}
+	}
+	
+	/**
+	 * Set points in Hough space from an orientation field.
+	 * All the foreground points with a local model are used (deterministic).
+	 * @param field Input orientation field.
+	 * @return The Hough points.
+	 * @see buildOrientationField
+	 */
+	public static HoughSpace buildHoughSpace(HoughSpace field) {
+		HoughSpace results = new HoughSpace(field.size);
 		
-		IntStream.range(0, numberOfPoints).forEach(i -> {
-			tasks.add(() -> {
-				ImagePoint p0 = foregroundPoints.get(generator.nextInt(foregroundPoints.size()));
-				
-				// Select p0's neighborhood
-				List<ImagePoint> neighborhood = new Vector<>();
-				
-				for (ImagePoint p : foregroundPoints) {
-					if (!p.equals(p0) && p.distanceToPoint(p0) < windowSize)
-						neighborhood.add(p);
-				}
-				
-				if (!neighborhood.isEmpty())
-					return p0.estimatedHoughPoint(neighborhood);
-				else
-					return null;
-			});
-		});
+		for (int i = 0; i < field.size; i++) {
+			if (!Double.isNaN(field.theta[i]))
+				results.add(field.theta[i], field.rho[i]);
+		}
 		
-		// Run threads in parallel and reduce results
-		Vector<HoughPoint> results = new Vector<>();
-		ExecutorService executor = Executors.newWorkStealingPool();
-		
-	    try {
-	        executor.invokeAll(tasks)
-	        	.stream()
-	        	.map(future -> {
-	        		try {
-	        			return future.get();
-	        		}
-	        		catch (Exception e) {
-	        			throw new IllegalStateException(e);
-	        		}
-	        	})
-	        	.forEach(result -> {
-	        		if (result != null) 
-	        			results.add(result);
-	        	});
-	    }
-	    catch (Exception e) {
-	    	IJ.error("Exception", "An exception occured!\n" + e.getMessage());
-	    }
+		return results;
+	}
+	
+	/**
+	 * Set points in Hough space by sampling an orientation field.
+	 * 
+	 * The Hough points are looked up at <code>numberOfPoints</code> randomly
+	 * sampled foreground points (those without local model are skipped).
+	 * 
+	 * @param field Input orientation field.
+	 * @param numberOfPoints Number of points to sample.
+	 * @param seed Seed of random sampling.
+	 * @return The Hough points.
+	 * @see buildOrientationField
+	 */
+	public static HoughSpace sampleOrientationField(HoughSpace field, int numberOfPoints, long seed) {
+		SplittableRandom generator = new SplittableRandom(seed);
+		HoughSpace results = new HoughSpace(numberOfPoints);
+		
+		if (field.isEmpty())
+			return results;
+		
+		for (int n = 0; n < numberOfPoints; n++) {
+			int i = generator.nextInt(field.size);
+			
+			if (!Double.isNaN(field.theta[i]))
+				results.add(field.theta[i], field.rho[i]);
+		}
 		
 		return results;
 	}
-
+	
 	/**
 	 * Show the dialog box for input parameters.
 	 * @return True if the dialog box has been filled and accepted, false otherwise.
@@ -490,17 +1210,31 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 		gd.addPanel(new gui.SeparatorPanel("Local model"));
 		gd.addNumericField("Thickness", this.thickness, 1, number_of_columns, "pixels");
 		gd.addNumericField("Local window half-size", this.localWindowHalfSize, 0, number_of_columns, "pixels");
+		gd.addChoice("Local model estimator", LineEstimator.getLabels(), this.lineEstimator.getLabel());
 		
 		gd.addPanel(new gui.SeparatorPanel("Selection of candidates"));
+		gd.addChoice("Candidates finder", HoughEngine.getLabels(), this.houghEngine.getLabel());
 		gd.addNumericField("Number of samples", this.numberOfPoints, 0, number_of_columns, "");
+		gd.addCheckbox("Use all skeleton pixels", this.useAllPixels);
+		gd.addCheckbox("Adaptive number of samples", this.adaptiveSampling);
+		gd.addNumericField("Maximal number of samples", this.maxSamples, 0, number_of_columns, "");
+		gd.addCheckbox("Progressive detection", this.progressiveDetection);
+		gd.addNumericField("Random seed", this.seed, 0, number_of_columns, "");
 		gd.addNumericField("Shift tolerance", this.thicknessSensitivity, 1, number_of_columns, "pixels");
 		gd.addNumericField("Angular tolerance", this.angularSensitivity, 1, number_of_columns, "degrees");
 		gd.addNumericField("Selection sensitivity", this.selectionSensitivity, 2, number_of_columns, "");
+		gd.addNumericField("Binning (mean-shift)", this.binning, 2, number_of_columns, "x tolerances");
 		
 		gd.addPanel(new gui.SeparatorPanel("Segments building"));
 		gd.addNumericField("Maximum segment gap", this.maxSegmentGap, 1, number_of_columns, "pixels");
 		gd.addNumericField("Minimum segment length", this.minSegmentLength, 1, number_of_columns, "pixels");
 		gd.addNumericField("Segment width tolerance", this.widthTolerance, 1, number_of_columns, "pixels");
+		gd.addChoice("Segments builder", SegmentBuilder.getLabels(), this.segmentBuilder.getLabel());
+		gd.addCheckbox("Find gaps by projection on lines", this.projectedGaps);
+		gd.addCheckbox("Merge overlapping segments", this.mergeSegments);
+		
+		gd.addPanel(new gui.SeparatorPanel("Execution"));
+		gd.addNumericField("Number of threads", this.numberOfThreads, 0, number_of_columns, "");
 
 		gd.showDialog();
 		if (gd.wasCanceled())
@@ -511,12 +1245,24 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 		this.thickness            = gd.getNextNumber();
 		this.localWindowHalfSize  = (int)gd.getNextNumber();
 		this.numberOfPoints       = (int)gd.getNextNumber();
+		this.maxSamples           = (int)gd.getNextNumber();
+		this.seed                 = (long)gd.getNextNumber();
 		this.thicknessSensitivity = gd.getNextNumber();
 		this.angularSensitivity   = gd.getNextNumber();
 		this.selectionSensitivity = gd.getNextNumber();
+		this.binning              = gd.getNextNumber();
 		this.maxSegmentGap        = gd.getNextNumber();
 		this.minSegmentLength     = gd.getNextNumber();
 		this.widthTolerance       = gd.getNextNumber();
+		this.useAllPixels         = gd.getNextBoolean();
+		this.adaptiveSampling     = gd.getNextBoolean();
+		this.progressiveDetection = gd.getNextBoolean();
+		this.projectedGaps        = gd.getNextBoolean();
+		this.mergeSegments        = gd.getNextBoolean();
+		this.lineEstimator        = LineEstimator.values()[gd.getNextChoiceIndex()];
+		this.houghEngine          = HoughEngine.values()[gd.getNextChoiceIndex()];
+		this.segmentBuilder       = SegmentBuilder.values()[gd.getNextChoiceIndex()];
+		this.numberOfThreads      = (int)gd.getNextNumber();
 
 		return true;
 	}
@@ -548,6 +1294,10 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 				IJ.error("Input error", "Selection sensitivity must be greater than zero!");
 			else if (Double.compare(this.selectionSensitivity, 1.0) >= 0)
 				IJ.error("Input error", "Selection sensitivity must be lesser than one!");
+			else if (Double.compare(this.binning, 0.0) < 0)
+				IJ.error("Input error", "Binning must be greater or equal than zero!");
+			else if (Double.compare(this.binning, 1.0) >= 0)
+				IJ.error("Input error", "Binning must be lesser than one!");
 			else if (Double.compare(this.maxSegmentGap, 0.0) <= 0)
 				IJ.error("Input error", "Maximal segment gap must be greater than zero!");
 			else if (Double.compare(this.minSegmentLength, 0.0) <= 0)
@@ -556,6 +1306,20 @@ public class Extract_DNA_Fibers implements PlugInFilter {
 				IJ.error("Input error", "Segment width tolerance must be greater than zero!");
 			else if (this.localWindowHalfSize < 2)
 				IJ.error("Input error", "The loca window half-size must be at least 2 pixels!");
+			else if (this.numberOfThreads < 1)
+				IJ.error("Input error", "The number of threads must be at least 1!");
+			else if (this.adaptiveSampling && this.maxSamples < this.numberOfPoints)
+				IJ.error("Input error", "The maximal number of samples must be greater or equal than the number of samples!");
+			else if (this.adaptiveSampling && this.useAllPixels)
+				IJ.error("Input error", "Adaptive sampling cannot be used with all skeleton pixels!");
+			else if (this.adaptiveSampling && this.progressiveDetection)
+				IJ.error("Input error", "Adaptive sampling cannot be used with progressive detection!");
+			else if (this.adaptiveSampling && this.houghEngine == HoughEngine.ACCUMULATOR)
+				IJ.error("Input error", "Adaptive sampling cannot be used with the voting accumulator (it uses all skeleton pixels)!");
+			else if (this.progressiveDetection && this.useAllPixels)
+				IJ.error("Input error", "Progressive detection cannot be used with all skeleton pixels!");
+			else if (this.progressiveDetection && this.segmentBuilder != SegmentBuilder.LINE_BAND)
+				IJ.error("Input error", "Progressive detection builds the segments of each line from its band (use the line band builder)!");
 			else
 				checked = true;
 			
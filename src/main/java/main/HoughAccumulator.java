@@ -0,0 +1,476 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import ij.IJ;
+
+/**
+ * Voting accumulator in Hough space.
+ *
+ * The Hough space is discretized in bins of a fraction of the bandwidths,
+ * each point votes in its bin and the peaks are found by non-maximum
+ * suppression of the votes within one bandwidth. The score of a peak is
+ * its number of votes within one bandwidth and its location is the mean
+ * of these votes. The time is linear in the number of points and bins.
+ *
+ * The angular axis is [-pi/2,pi/2) and periodic: a point (theta,rho) is
+ * identified with (theta+pi,-rho) and (theta-pi,-rho), i.e. the same line
+ * in image space. The rho axis is symmetric so that the bins of both
+ * borders of the angular axis match.
+ *
+ * @author julien.pontabry
+ */
+public class HoughAccumulator {
+	/** Bandwidths for each component. */
+	protected HoughPoint h;
+
+	/** Size of bins as a fraction of bandwidths. */
+	protected double binning = 0.5;
+
+	/** Executor running the parallel tasks (null to use a temporary one for each run). */
+	protected ExecutorService executor = null;
+
+	/** Number of bins on angular axis. */
+	protected int thetaBins = 0;
+
+	/** Number of bins on rho axis. */
+	protected int rhoBins = 0;
+
+	/** Size of bins on angular axis. */
+	protected double thetaStep = 0.0;
+
+	/** Size of bins on rho axis. */
+	protected double rhoStep = 0.0;
+
+	/** Lower bound of rho axis (the upper bound is its opposite). */
+	protected double minRho = 0.0;
+
+	/** Number of votes of each bin (rows of angular bins). */
+	protected int[] votes = null;
+
+	/** Sum of angles of the votes of each bin. */
+	protected double[] sumOfThetas = null;
+
+	/** Sum of rhos of the votes of each bin. */
+	protected double[] sumOfRhos = null;
+
+	/** Output peaks of last run. */
+	protected HoughSpace peaks = null;
+
+	/** Output scores (number of votes within one bandwidth) of peaks of last run. */
+	protected int[] scores = null;
+
+	/** Lower bound of the angular axis. */
+	protected static final double minTheta = -Math.PI/2.0;
+
+	/** Upper bound of the angular axis. */
+	protected static final double maxTheta = Math.PI/2.0;
+
+	/**
+	 * Constructor.
+	 * @param h The bandwidths for both components as a <code>HoughPoint</code>
+	 */
+	public HoughAccumulator(HoughPoint h) {
+		this.h = h;
+	}
+
+	/**
+	 * Vote for input points and find the peaks.
+	 * @param points Input points in Hough space.
+	 * @return The peaks in Hough space.
+	 */
+	public HoughSpace runWith(HoughSpace points) {
+		if (this.executor != null)
+			return this.runWith(points, this.executor);
+
+		try (ExecutionContext context = new ExecutionContext()) {
+			return this.runWith(points, context.getExecutor());
+		}
+	}
+
+	/**
+	 * Vote for input points and find the peaks.
+	 * @param points Input points in Hough space.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return The peaks in Hough space.
+	 */
+	protected HoughSpace runWith(HoughSpace points, ExecutorService executor) {
+		this.setupBins(points);
+		this.vote(points, executor);
+		this.findPeaks(this.smoothVotes(this.getRadius()));
+
+		return this.peaks;
+	}
+
+	/**
+	 * Setup the bins of the accumulator (the rho axis covers the input points).
+	 * @param points Input points in Hough space.
+	 */
+	protected void setupBins(HoughSpace points) {
+		double maxRho = 0.0;
+
+		for (int i = 0; i < points.size; i++)
+			maxRho = Math.max(maxRho, Math.abs(points.rho[i]));
+
+		// Angular bins divide the period exactly, rho bins are symmetric around zero
+		this.thetaBins = Math.max(1, (int)Math.ceil(Math.PI / (this.binning * this.h.theta)));
+		this.thetaStep = Math.PI / this.thetaBins;
+		this.rhoStep   = this.binning * this.h.rho;
+		this.rhoBins   = 2 * ((int)Math.floor(maxRho / this.rhoStep) + 1);
+		this.minRho    = -0.5 * this.rhoBins * this.rhoStep;
+	}
+
+	/**
+	 * Vote for input points in parallel.
+	 * Each task votes for a part of the points in its own accumulator,
+	 * and the accumulators are reduced at the end.
+	 * @param points Input points in Hough space.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 */
+	protected void vote(HoughSpace points, ExecutorService executor) {
+		int numberOfBins = this.thetaBins * this.rhoBins;
+
+		this.votes       = new int[numberOfBins];
+		this.sumOfThetas = new double[numberOfBins];
+		this.sumOfRhos   = new double[numberOfBins];
+
+		// Setup voting functions to be executed in parallel (by groups of points)
+		List<Callable<Void>> tasks = new Vector<>();
+		int numberOfTasks = Math.max(1, Math.min(ExecutionContext.getParallelism(executor), points.size / 4096));
+		int groupSize = Math.max(1, (points.size + numberOfTasks - 1) / numberOfTasks);
+
+		List<int[]>        taskVotes = new Vector<>();
+		List<double[]> taskSumThetas = new Vector<>();
+		List<double[]>   taskSumRhos = new Vector<>();
+
+		for (int i = 0; i < points.size; i += groupSize) {
+			final int startIndex = i;
+			final int   endIndex = Math.min(i+groupSize, points.size);
+			final int[]           votes = (i == 0) ? this.votes : new int[numberOfBins];
+			final double[] sumOfThetas = (i == 0) ? this.sumOfThetas : new double[numberOfBins];
+			final double[]   sumOfRhos = (i == 0) ? this.sumOfRhos : new double[numberOfBins];
+
+			if (i != 0) {
+				taskVotes.add(votes);
+				taskSumThetas.add(sumOfThetas);
+				taskSumRhos.add(sumOfRhos);
+			}
+
+			tasks.add(() -> {
+				for (int j = startIndex; j < endIndex; j++) {
+					double theta = points.theta[j], rho = points.rho[j];
+
+					if (Double.isNaN(theta) || Double.isNaN(rho))
+						continue;
+
+					// Bring the point in the angular range
+					while (Double.compare(theta, HoughAccumulator.minTheta) < 0) {
+						theta += Math.PI;
+						rho = -rho;
+					}
+
+					while (Double.compare(theta, HoughAccumulator.maxTheta) >= 0) {
+						theta -= Math.PI;
+						rho = -rho;
+					}
+
+					int bin = this.getBin(theta, rho);
+					votes[bin]++;
+					sumOfThetas[bin] += theta;
+					sumOfRhos[bin] += rho;
+				}
+
+				return null;
+			});
+		}
+
+		// Run threads in parallel and reduce accumulators
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+
+			for (int t = 0; t < taskVotes.size(); t++) {
+				int[]          votes = taskVotes.get(t);
+				double[] sumOfThetas = taskSumThetas.get(t);
+				double[]   sumOfRhos = taskSumRhos.get(t);
+
+				for (int b = 0; b < numberOfBins; b++) {
+					this.votes[b] += votes[b];
+					this.sumOfThetas[b] += sumOfThetas[b];
+					this.sumOfRhos[b] += sumOfRhos[b];
+				}
+			}
+		}
+		catch (Exception e) {
+			IJ.error("Exception", "An exception occured!\n" + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sum the votes within a window around each bin.
+	 * The sum is separable: the rho axis is summed first and the angular
+	 * axis then, the rows beyond the angular borders being the mirrored
+	 * rows of the other border.
+	 * @param radius Half size of the window (in bins).
+	 * @return The sums of votes (rows of angular bins).
+	 */
+	protected int[] smoothVotes(int radius) {
+		int[] rowSums = new int[this.votes.length];
+
+		for (int i = 0; i < this.thetaBins; i++) {
+			int offset = i * this.rhoBins;
+
+			for (int j = 0; j < this.rhoBins; j++) {
+				int sum = 0;
+
+				for (int k = Math.max(j-radius, 0); k <= Math.min(j+radius, this.rhoBins-1); k++)
+					sum += this.votes[offset + k];
+
+				rowSums[offset + j] = sum;
+			}
+		}
+
+		int[] sums = new int[this.votes.length];
+
+		for (int i = 0; i < this.thetaBins; i++) {
+			for (int j = 0; j < this.rhoBins; j++) {
+				int sum = 0;
+
+				for (int d = -radius; d <= radius; d++)
+					sum += rowSums[this.getNeighborBin(i+d, j)];
+
+				sums[i * this.rhoBins + j] = sum;
+			}
+		}
+
+		return sums;
+	}
+
+	/**
+	 * Find the peaks of the sums of votes by non-maximum suppression.
+	 * A bin is a peak when its sum is greater than the sums of the bins
+	 * within one bandwidth (ties are broken by the votes of the bins, then by bin order).
+	 * @param sums Sums of votes within one bandwidth.
+	 */
+	protected void findPeaks(int[] sums) {
+		int radius = this.getRadius();
+		HoughSpace peaks = new HoughSpace();
+		List<Integer> scores = new Vector<Integer>();
+
+		for (int i = 0; i < this.thetaBins; i++) {
+			for (int j = 0; j < this.rhoBins; j++) {
+				int bin = i * this.rhoBins + j;
+
+				if (this.votes[bin] == 0 || !this.isMaximum(sums, i, j, radius))
+					continue;
+
+				// Mean of the votes within the window (mirrored beyond the angular borders)
+				double sumOfThetas = 0.0, sumOfRhos = 0.0;
+				int n = 0;
+
+				for (int di = -radius; di <= radius; di++) {
+					int  shift = Math.floorDiv(i+di, this.thetaBins);
+					double sign = (shift % 2 == 0) ? 1.0 : -1.0;
+
+					for (int dj = -radius; dj <= radius; dj++) {
+						if (j+dj < 0 || j+dj >= this.rhoBins)
+							continue;
+
+						int neighbor = this.getNeighborBin(i+di, j+dj);
+						sumOfThetas += this.sumOfThetas[neighbor] + shift * Math.PI * this.votes[neighbor];
+						sumOfRhos += sign * this.sumOfRhos[neighbor];
+						n += this.votes[neighbor];
+					}
+				}
+
+				double theta = sumOfThetas / n, rho = sumOfRhos / n;
+
+				if (Double.compare(theta, HoughAccumulator.minTheta) < 0) {
+					theta += Math.PI;
+					rho = -rho;
+				}
+				else if (Double.compare(theta, HoughAccumulator.maxTheta) >= 0) {
+					theta -= Math.PI;
+					rho = -rho;
+				}
+
+				peaks.add(theta, rho);
+				scores.add(sums[bin]);
+			}
+		}
+
+		this.peaks = peaks;
+		this.scores = new int[scores.size()];
+
+		for (int k = 0; k < this.scores.length; k++)
+			this.scores[k] = scores.get(k);
+	}
+
+	/**
+	 * Check if a bin is the maximum of the sums within a window.
+	 * @param sums Sums of votes.
+	 * @param i Index of the bin on angular axis.
+	 * @param j Index of the bin on rho axis.
+	 * @param radius Half size of the window (in bins).
+	 * @return True if the bin is the maximum (ties are broken by the votes of the bins, then by bin order).
+	 */
+	protected boolean isMaximum(int[] sums, int i, int j, int radius) {
+		int bin = i * this.rhoBins + j;
+
+		for (int di = -radius; di <= radius; di++) {
+			for (int dj = -radius; dj <= radius; dj++) {
+				if ((di == 0 && dj == 0) || j+dj < 0 || j+dj >= this.rhoBins)
+					continue;
+
+				int neighbor = this.getNeighborBin(i+di, j+dj);
+
+				if (sums[neighbor] > sums[bin] || (sums[neighbor] == sums[bin] &&
+					(this.votes[neighbor] > this.votes[bin] || (this.votes[neighbor] == this.votes[bin] && neighbor < bin))))
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get the bin of a point in the angular range.
+	 * @param theta Angle of the point (in the angular range).
+	 * @param rho Rho of the point.
+	 * @return The index of the bin.
+	 */
+	protected int getBin(double theta, double rho) {
+		int i = Math.min((int)((theta - HoughAccumulator.minTheta) / this.thetaStep), this.thetaBins-1);
+		int j = Math.max(0, Math.min((int)((rho - this.minRho) / this.rhoStep), this.rhoBins-1));
+
+		return i * this.rhoBins + j;
+	}
+
+	/**
+	 * Get the bin of given indices, where the angular index may be beyond
+	 * the borders (the rho index is then mirrored).
+	 * @param i Index on angular axis (may be out of range).
+	 * @param j Index on rho axis (in range).
+	 * @return The index of the bin.
+	 */
+	protected int getNeighborBin(int i, int j) {
+		int shift = Math.floorDiv(i, this.thetaBins);
+
+		if (shift % 2 != 0)
+			j = this.rhoBins-1 - j;
+
+		return (i - shift * this.thetaBins) * this.rhoBins + j;
+	}
+
+	/**
+	 * Get the half size of the window of one bandwidth (in bins).
+	 * @return The half size of the window.
+	 */
+	protected int getRadius() {
+		return Math.max(1, (int)Math.round(1.0 / this.binning));
+	}
+
+	/**
+	 * Set the size of the bins.
+	 * @param binning Size of bins as a fraction of bandwidths (in (0,1]).
+	 */
+	public void setBinning(double binning) {
+		this.binning = binning;
+	}
+
+	/**
+	 * Get the size of the bins.
+	 * @return Size of bins as a fraction of bandwidths.
+	 */
+	public double getBinning() {
+		return this.binning;
+	}
+
+	/**
+	 * Set the bandwidths.
+	 * @param h Any bandwidth vector as HoughPoint.
+	 */
+	public void setBandwidth(HoughPoint h) {
+		this.h = h;
+	}
+
+	/**
+	 * Get the bandwidths.
+	 * @return Currently used bandwidths.
+	 */
+	public HoughPoint getBandwidth() {
+		return this.h;
+	}
+
+	/**
+	 * Set the executor running the parallel tasks.
+	 * @param executor Executor (it is not shut down), or null to use a temporary pool.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the executor running the parallel tasks.
+	 * @return The executor, or null when a temporary pool is used.
+	 */
+	public ExecutorService getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Get the peaks found during last run.
+	 * @return The peaks in Hough space.
+	 */
+	public HoughSpace getPeaks() {
+		return this.peaks;
+	}
+
+	/**
+	 * Get the scores of the peaks found during last run.
+	 * @return The number of votes within one bandwidth of each peak.
+	 */
+	public int[] getScores() {
+		return this.scores;
+	}
+
+	/**
+	 * Get the number of bins on angular axis of last run.
+	 * @return The number of bins.
+	 */
+	public int getNumberOfThetaBins() {
+		return this.thetaBins;
+	}
+
+	/**
+	 * Get the number of bins on rho axis of last run.
+	 * @return The number of bins.
+	 */
+	public int getNumberOfRhoBins() {
+		return this.rhoBins;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+/**
+ * Engines finding the lines (points in Hough space) supported by many local models.
+ *
+ * @author julien.pontabry
+ */
+public enum HoughEngine {
+	/** Mean-shift on the points in Hough space (modes of the kernel density estimate). */
+	MEAN_SHIFT("Mean-shift"),
+
+	/** Votes in a discretized Hough space and non-maximum suppression (linear time). */
+	ACCUMULATOR("Voting accumulator (fast)"),
+
+	/** Kernel density estimate on a grid by separable convolution and basins of its modes (linear time). */
+	KERNEL_DENSITY("Kernel density on grid (fast)");
+
+	/** Name displayed in user interface. */
+	private final String label;
+
+	/**
+	 * Constructor.
+	 * @param label Name displayed in user interface.
+	 */
+	private HoughEngine(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * Get the name displayed in user interface.
+	 * @return Name of the engine.
+	 */
+	public String getLabel() {
+		return this.label;
+	}
+
+	/**
+	 * Get the names of all engines displayed in user interface.
+	 * @return Names of the engines (in declaration order).
+	 */
+	public static String[] getLabels() {
+		HoughEngine[] engines = HoughEngine.values();
+		String[] labels = new String[engines.length];
+
+		for (int i = 0; i < engines.length; i++)
+			labels[i] = engines[i].label;
+
+		return labels;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+/**
+ * Defines the kernel used by the mean-shift algorithm.
+ * 
+ * The kernel is given by its profile, i.e. the weight of a data point as a
+ * function of its squared normalized distance u^2 to the current position.
+ * The mean-shift procedure only calls it for u^2 in [0, maxDomain).
+ * 
+ * @author julien.pontabry
+ * @see MeanShift#maxDomain
+ */
+public interface Kernel {
+	/**
+	 * Compute the weight of a point.
+	 * @param u2 Squared normalized distance (in [0, maxDomain)).
+	 * @return The weight of the point.
+	 */
+	public double weight(double u2);
+}
@@ -0,0 +1,250 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+
+/**
+ * Kernel density estimate of points in Hough space on a regular grid.
+ *
+ * The points are splatted in the bins of the grid, which is convolved with
+ * the anisotropic Gaussian kernel of given bandwidths by two separable 1D
+ * passes (the angular axis is periodic). Each bin then climbs the density to
+ * a local maximum and the count of a mode is the number of points in its
+ * basin, as the count of points converging to a mode with mean-shift. The
+ * time is linear in the number of points and bins.
+ *
+ * @author julien.pontabry
+ * @see HoughAccumulator
+ */
+public class KernelDensityGrid extends HoughAccumulator {
+	/** Truncation of the Gaussian kernel on each axis (in bandwidths). */
+	protected static final double truncation = 3.0;
+
+	/** Density of each bin of last run (rows of angular bins). */
+	protected double[] density = null;
+
+	/**
+	 * Constructor.
+	 * @param h The bandwidths for both components as a <code>HoughPoint</code>
+	 */
+	public KernelDensityGrid(HoughPoint h) {
+		super(h);
+		this.binning = 0.25;
+	}
+
+	/**
+	 * Estimate the density of input points and find its modes.
+	 * @param points Input points in Hough space.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return The modes in Hough space.
+	 */
+	@Override
+	protected HoughSpace runWith(HoughSpace points, ExecutorService executor) {
+		this.setupBins(points);
+		this.vote(points, executor);
+		this.density = this.convolve(KernelDensityGrid.getGaussianKernel(this.getKernelRadius(), 1.0 / this.binning));
+		this.findModes();
+
+		return this.peaks;
+	}
+
+	/**
+	 * Convolve the votes with a separable kernel.
+	 * The rho axis is convolved first and the angular axis then, the rows
+	 * beyond the angular borders being the mirrored rows of the other border.
+	 * @param kernel Weights of the 1D kernel (of odd size, centered).
+	 * @return The convolved votes (rows of angular bins).
+	 */
+	protected double[] convolve(double[] kernel) {
+		int radius = kernel.length / 2;
+		double[] rowDensity = new double[this.votes.length];
+
+		for (int i = 0; i < this.thetaBins; i++) {
+			int offset = i * this.rhoBins;
+
+			for (int j = 0; j < this.rhoBins; j++) {
+				int vote = this.votes[offset + j];
+
+				if (vote == 0)
+					continue;
+
+				// Scatter the votes (most bins are empty)
+				for (int k = Math.max(j-radius, 0); k <= Math.min(j+radius, this.rhoBins-1); k++)
+					rowDensity[offset + k] += vote * kernel[k - j + radius];
+			}
+		}
+
+		double[] density = new double[this.votes.length];
+
+		for (int i = 0; i < this.thetaBins; i++) {
+			for (int j = 0; j < this.rhoBins; j++) {
+				double sum = 0.0;
+
+				for (int d = -radius; d <= radius; d++)
+					sum += kernel[d + radius] * rowDensity[this.getNeighborBin(i+d, j)];
+
+				density[i * this.rhoBins + j] = sum;
+			}
+		}
+
+		return density;
+	}
+
+	/**
+	 * Find the modes of the density and the number of votes in their basin.
+	 * Each bin points to its neighbor of highest density (ties are broken by
+	 * bin order), and the bins pointing to themselves are the modes. The
+	 * location of a mode is refined by a mean-shift step from its bin.
+	 */
+	protected void findModes() {
+		int numberOfBins = this.votes.length;
+		int[] parents = new int[numberOfBins];
+
+		for (int i = 0; i < this.thetaBins; i++) {
+			for (int j = 0; j < this.rhoBins; j++) {
+				int bin = i * this.rhoBins + j, parent = bin;
+
+				for (int di = -1; di <= 1; di++) {
+					for (int dj = -1; dj <= 1; dj++) {
+						if (j+dj < 0 || j+dj >= this.rhoBins)
+							continue;
+
+						int neighbor = this.getNeighborBin(i+di, j+dj);
+
+						if (this.density[neighbor] > this.density[parent] || (this.density[neighbor] == this.density[parent] && neighbor < parent))
+							parent = neighbor;
+					}
+				}
+
+				parents[bin] = parent;
+			}
+		}
+
+		// Climb to the modes and count the votes of basins
+		int[] counts = new int[numberOfBins];
+
+		for (int bin = 0; bin < numberOfBins; bin++) {
+			if (this.votes[bin] == 0)
+				continue;
+
+			int root = bin;
+			while (parents[root] != root)
+				root = parents[root];
+
+			// Path compression
+			for (int b = bin; parents[b] != root && b != root; ) {
+				int next = parents[b];
+				parents[b] = root;
+				b = next;
+			}
+
+			counts[root] += this.votes[bin];
+		}
+
+		HoughSpace peaks = new HoughSpace();
+		List<Integer> scores = new Vector<Integer>();
+		double[] kernel = KernelDensityGrid.getGaussianKernel(this.getKernelRadius(), 1.0 / this.binning);
+		int radius = kernel.length / 2;
+
+		for (int i = 0; i < this.thetaBins; i++) {
+			for (int j = 0; j < this.rhoBins; j++) {
+				int bin = i * this.rhoBins + j;
+
+				if (counts[bin] == 0)
+					continue;
+
+				// Weighted mean of the votes around the mode (mirrored beyond the angular borders)
+				double sumOfThetas = 0.0, sumOfRhos = 0.0, sumOfWeights = 0.0;
+
+				for (int di = -radius; di <= radius; di++) {
+					int  shift = Math.floorDiv(i+di, this.thetaBins);
+					double sign = (shift % 2 == 0) ? 1.0 : -1.0;
+
+					for (int dj = -radius; dj <= radius; dj++) {
+						if (j+dj < 0 || j+dj >= this.rhoBins)
+							continue;
+
+						int neighbor = this.getNeighborBin(i+di, j+dj);
+						double weight = kernel[di + radius] * kernel[dj + radius];
+						sumOfThetas += weight * (this.sumOfThetas[neighbor] + shift * Math.PI * this.votes[neighbor]);
+						sumOfRhos += weight * sign * this.sumOfRhos[neighbor];
+						sumOfWeights += weight * this.votes[neighbor];
+					}
+				}
+
+				double theta = sumOfThetas / sumOfWeights, rho = sumOfRhos / sumOfWeights;
+
+				if (Double.compare(theta, HoughAccumulator.minTheta) < 0) {
+					theta += Math.PI;
+					rho = -rho;
+				}
+				else if (Double.compare(theta, HoughAccumulator.maxTheta) >= 0) {
+					theta -= Math.PI;
+					rho = -rho;
+				}
+
+				peaks.add(theta, rho);
+				scores.add(counts[bin]);
+			}
+		}
+
+		this.peaks = peaks;
+		this.scores = new int[scores.size()];
+
+		for (int k = 0; k < this.scores.length; k++)
+			this.scores[k] = scores.get(k);
+	}
+
+	/**
+	 * Get the half size of the truncated kernel (in bins).
+	 * @return The half size of the kernel.
+	 */
+	protected int getKernelRadius() {
+		return Math.max(1, (int)Math.ceil(KernelDensityGrid.truncation / this.binning));
+	}
+
+	/**
+	 * Get the weights of a truncated 1D Gaussian kernel.
+	 * @param radius Half size of the kernel (in bins).
+	 * @param sigma Standard deviation (in bins).
+	 * @return The weights (not normalized, the center weight is one).
+	 */
+	protected static double[] getGaussianKernel(int radius, double sigma) {
+		double[] kernel = new double[2*radius + 1];
+
+		for (int k = -radius; k <= radius; k++)
+			kernel[k + radius] = Math.exp(-0.5 * k*k / (sigma*sigma));
+
+		return kernel;
+	}
+
+	/**
+	 * Get the density of last run.
+	 * @return The density of each bin (rows of angular bins).
+	 */
+	public double[] getDensity() {
+		return this.density;
+	}
+}
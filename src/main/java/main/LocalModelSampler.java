@@ -0,0 +1,339 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import coordinates.AngleTable;
+import coordinates.GridIndex;
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import coordinates.ImagePoint;
+import coordinates.ImagePointArray;
+import coordinates.RowSumMoments;
+import coordinates.LineEstimator;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.Roi;
+
+/**
+ * Estimation of local models (lines in Hough space) of skeleton pixels.
+ *
+ * The foreground points of the skeleton image, their spatial index and
+ * the lookup structures of the estimator are set up once, so that local
+ * models can then be sampled several times or estimated for all points.
+ *
+ * The image space is defined to have origin at image center.
+ *
+ * @author julien.pontabry
+ */
+public class LocalModelSampler {
+	/** Number of random samples generated by each parallel task. */
+	protected static final int samplesPerTask = 64;
+
+	/** Foreground points of skeleton image. */
+	protected ImagePointArray foregroundPoints;
+
+	/** Spatial index for neighborhood queries (neighbors are within the 3x3 surrounding cells). */
+	protected GridIndex grid;
+
+	/** Half size of the window used when estimating the local model. */
+	protected int windowSize;
+
+	/** Estimator of local models. */
+	protected LineEstimator estimator;
+
+	/** Lookup table of local model angles for offsets in window (for Theil-Sen estimator). */
+	protected AngleTable angles;
+
+	/** Row sums of moments of foreground points (for the row sums structure tensor estimator). */
+	protected RowSumMoments moments;
+
+	/** Foreground points removed from sampling and neighborhoods (null when none has been removed). */
+	protected boolean[] removed = null;
+
+	/** Positions of the foreground points not removed (null when none has been removed). */
+	protected int[] activeIndices = null;
+
+	/** Number of foreground points not removed. */
+	protected int numberOfActivePoints;
+
+	/**
+	 * Constructor.
+	 * @param skeletons Input skeletons image (binary).
+	 * @param roi Input roi.
+	 * @param windowSize Half size of the window used when estimating the local model.
+	 * @param estimator Estimator of local models.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 */
+	public LocalModelSampler(ImagePlus skeletons, Roi roi, int windowSize, LineEstimator estimator, ExecutorService executor) {
+		// Setup list of foreground pixels' coordinates in coordinate system with origin centered.
+		ImagePoint origin = ImagePoint.getCenterPointOfImage(skeletons);
+		this.foregroundPoints = ImagePoint.getImageForegroundPointArray(skeletons, roi, origin, executor);
+		this.windowSize = windowSize;
+		this.estimator = estimator;
+		
+		// Setup spatial index, lookup table (or row sums of moments)
+		this.grid = new GridIndex(this.foregroundPoints, windowSize);
+		this.angles = (estimator == LineEstimator.THEIL_SEN) ? new AngleTable(windowSize) : null;
+		this.moments = (estimator == LineEstimator.ROW_SUMS_STRUCTURE_TENSOR) ? new RowSumMoments(this.foregroundPoints) : null;
+		this.numberOfActivePoints = this.foregroundPoints.size;
+	}
+
+	/**
+	 * Remove foreground points from sampling and from the neighborhoods of local models.
+	 * @param mask Foreground points to remove (in the order of foreground points).
+	 * @return The number of points newly removed.
+	 */
+	public int remove(boolean[] mask) {
+		if (this.removed == null)
+			this.removed = new boolean[this.foregroundPoints.size];
+
+		int numberOfRemovedPoints = 0;
+
+		for (int i = 0; i < this.foregroundPoints.size; i++) {
+			if (mask[i] && !this.removed[i]) {
+				this.removed[i] = true;
+				numberOfRemovedPoints++;
+
+				// Subtract the point from the sums of moments (instead of building them again)
+				if (this.moments != null)
+					this.moments.remove(this.foregroundPoints.x[i], this.foregroundPoints.y[i]);
+			}
+		}
+
+		// Update the positions of remaining points
+		this.activeIndices = new int[this.numberOfActivePoints - numberOfRemovedPoints];
+		this.numberOfActivePoints = 0;
+
+		for (int i = 0; i < this.foregroundPoints.size; i++) {
+			if (!this.removed[i])
+				this.activeIndices[this.numberOfActivePoints++] = i;
+		}
+
+		return numberOfRemovedPoints;
+	}
+
+	/**
+	 * Check if a foreground point has been removed.
+	 * @param i Position of the point in foreground points.
+	 * @return True if the point has been removed.
+	 */
+	public boolean isRemoved(int i) {
+		return this.removed != null && this.removed[i];
+	}
+
+	/**
+	 * Get the number of foreground points not removed.
+	 * @return The number of points available for sampling.
+	 */
+	public int getNumberOfActivePoints() {
+		return this.numberOfActivePoints;
+	}
+
+	/**
+	 * Get the foreground points of skeleton image.
+	 * @return The foreground points (in row-major order).
+	 */
+	public ImagePointArray getForegroundPoints() {
+		return this.foregroundPoints;
+	}
+
+	/**
+	 * Set points in Hough space from randomly sampled foreground points.
+	 * 
+	 * The Hough points are constructed from at most <code>numberOfPoints</code> 
+	 * randomly sampled foreground points in image space and their neighborhood
+	 * (removed points are neither sampled nor in neighborhoods).
+	 * 
+	 * Each parallel task draws its samples from its own generator, split from
+	 * a generator of given seed, so the result only depends on the inputs.
+	 * 
+	 * @param numberOfPoints Number of points to sample.
+	 * @param seed Seed of random sampling.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return The Hough points.
+	 */
+	public HoughSpace sample(int numberOfPoints, long seed, ExecutorService executor) {
+		if (this.numberOfActivePoints == 0)
+			return new HoughSpace();
+		
+		// Setup random generator
+		SplittableRandom generator = new SplittableRandom(seed);
+		
+		// Setup generation functions to be executed in parallel (by groups of samples
+		// of fixed size, each with its own generator, independently of the number of cores)
+		List<Callable<HoughSpace>> tasks = new Vector<>();
+		
+		for (int i = 0; i < numberOfPoints; i += LocalModelSampler.samplesPerTask) {
+			final int sizeIndex = Math.min(LocalModelSampler.samplesPerTask, numberOfPoints-i);
+			final SplittableRandom taskGenerator = generator.split();
+			
+			tasks.add(() -> {
+				HoughSpace houghPoints = new HoughSpace(sizeIndex);
+				ImagePointArray neighborhood = new ImagePointArray();
+				double[] moments = new double[4];
+				
+				for (int n = 0; n < sizeIndex; n++) {
+					int i0 = (this.activeIndices == null) ? taskGenerator.nextInt(this.foregroundPoints.size) : this.activeIndices[taskGenerator.nextInt(this.numberOfActivePoints)];
+					HoughPoint p = this.estimateLocalModel(i0, neighborhood, moments);
+					
+					if (p != null)
+						houghPoints.add(p.theta, p.rho);
+				}
+				
+				return houghPoints;
+			});
+		}
+		
+		// Run threads in parallel and reduce results
+		HoughSpace results = new HoughSpace(numberOfPoints);
+		
+	    try {
+	        executor.invokeAll(tasks)
+	        	.stream()
+	        	.map(future -> {
+	        		try {
+	        			return future.get();
+	        		}
+	        		catch (Exception e) {
+	        			throw new IllegalStateException(e);
+	        		}
+	        	})
+	        	.forEach(result -> results.addAll(result));
+	    }
+	    catch (Exception e) {
+	    	IJ.error("Exception", "An exception occured!\n" + e.getMessage());
+	    }
+		
+		return results;
+	}
+	
+
+	/**
+	 * Compute the local model of every foreground point.
+	 * 
+	 * The local line (in Hough space) of each foreground point is estimated
+	 * exactly once, in parallel. The field is given in the order of the
+	 * foreground points (row-major order) and the points without neighbors
+	 * (or removed) have NaN coordinates.
+	 * 
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return The orientation field as points in Hough space (one per foreground point).
+	 */
+	public HoughSpace estimateAll(ExecutorService executor) {
+		HoughSpace field = new HoughSpace(this.foregroundPoints.size);
+		field.size = this.foregroundPoints.size;
+		
+		// Setup estimation functions to be executed in parallel (by groups of points)
+		List<Callable<Void>> tasks = new Vector<>();
+		int groupSize = Math.max(1, this.foregroundPoints.size / (4*ExecutionContext.getParallelism(executor)));
+		
+		for (int i = 0; i < this.foregroundPoints.size; i += groupSize) {
+			final int startIndex = i;
+			final int   endIndex = Math.min(i+groupSize, this.foregroundPoints.size);
+			
+			tasks.add(() -> {
+				ImagePointArray neighborhood = new ImagePointArray();
+				double[] moments = new double[4];
+				
+				for (int j = startIndex; j < endIndex; j++) {
+					HoughPoint p = this.isRemoved(j) ? null : this.estimateLocalModel(j, neighborhood, moments);
+					
+					field.theta[j] = (p != null) ? p.theta : Double.NaN;
+					  field.rho[j] = (p != null) ? p.rho : Double.NaN;
+				}
+				
+				return null;
+			});
+		}
+		
+		// Run threads in parallel
+	    try {
+	        for (Future<Void> future : executor.invokeAll(tasks))
+	        	future.get();
+	    }
+	    catch (Exception e) {
+	    	IJ.error("Exception", "An exception occured!\n" + e.getMessage());
+	    }
+		
+		return field;
+	}
+	
+
+	/**
+	 * Estimate the local model of a foreground point from its neighborhood.
+	 * 
+	 * The neighborhood is the disk of radius <code>windowSize</code>, except
+	 * for the structure tensor with row sums trees which uses the square
+	 * window of half size <code>windowSize</code>.
+	 * 
+	 * @param i0 Position of the point in foreground points.
+	 * @param neighborhood Buffer for the neighborhood (its content is replaced).
+	 * @param moments Buffer for the moments of the window (four values, its content is replaced).
+	 * @return The estimated local line or null when the point has no neighbor.
+	 */
+	protected HoughPoint estimateLocalModel(int i0, ImagePointArray neighborhood, double[] moments) {
+		ImagePointArray foregroundPoints = this.foregroundPoints;
+		GridIndex grid = this.grid;
+		int windowSize = this.windowSize, windowSize2 = windowSize * windowSize;
+		int x0 = foregroundPoints.x[i0], y0 = foregroundPoints.y[i0];
+		
+		// Constant time estimation from the moments of the window (the point itself is counted)
+		if (this.estimator == LineEstimator.ROW_SUMS_STRUCTURE_TENSOR) {
+			this.moments.getMoments(x0, y0, windowSize, moments);
+			
+			if (Double.compare(moments[0], 1.0) <= 0)
+				return null;
+			
+			return ImagePoint.estimateHoughPointFromMoments(x0, y0, moments[1], moments[2], moments[3]);
+		}
+		
+		// Select the neighborhood of the point
+		neighborhood.size = 0;
+		
+		int column = grid.getColumn(x0), row = grid.getRow(y0);
+		
+		for (int r = Math.max(row-1, 0); r <= Math.min(row+1, grid.getRows()-1); r++) {
+			for (int c = Math.max(column-1, 0); c <= Math.min(column+1, grid.getColumns()-1); c++) {
+				for (int k = grid.getCellStart(c, r); k < grid.getCellEnd(c, r); k++) {
+					int j = grid.getIndex(k);
+					int dx = foregroundPoints.x[j] - x0;
+					int dy = foregroundPoints.y[j] - y0;
+					
+					if ((dx != 0 || dy != 0) && dx*dx + dy*dy < windowSize2 && !this.isRemoved(j))
+						neighborhood.add(foregroundPoints.x[j], foregroundPoints.y[j]);
+				}
+			}
+		}
+		
+		if (neighborhood.isEmpty())
+			return null;
+		
+		if (this.estimator == LineEstimator.STRUCTURE_TENSOR)
+			return ImagePoint.estimateHoughPointWithStructureTensor(x0, y0, neighborhood.x, neighborhood.y, neighborhood.size);
+		
+		return ImagePoint.estimateHoughPoint(x0, y0, neighborhood.x, neighborhood.y, neighborhood.size, this.angles);
+	}
+}
@@ -22,32 +22,40 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.IntStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
 
+import coordinates.GridIndex;
 import coordinates.HoughPoint;
+import coordinates.HoughSpace;
 import ij.IJ;
 
 
 /**
  * Defines the mean-shift algorithm on 2D points.
  * The <code>Point2D</code> class is not coded to make it
- * generic enough, so here we are using HoughPoint class instead.
+ * generic enough, so here we are using Hough space classes instead.
  * @author julien.pontabry
  */
 public class MeanShift {
-	/** Max domain value of the Gaussian kernel (approximation). */
+	/** Max domain value of the kernel (approximation of the Gaussian kernel, squared normalized distance). */
 	public static final double maxDomain = 5.0;
 	
 	/** Bandwidths for each component. */
 	protected HoughPoint h;
 	
+	/** Kernel used for density estimate. */
+	protected Kernel kernel;
+	
 	/** Output labels of input data points.*/
-	protected List<Integer> labels;
+	protected int[] labels;
 	
 	/** Output modes of kernel density estimate from intput data points. */
-	protected List<HoughPoint> modes;
+	protected HoughSpace modes;
 	
 	/** Numerical tolerance for convergence. */
 	protected final double tolerance = 1e-10;
@@ -58,6 +66,36 @@ public class MeanShift {
 	/** Maximum number of iterations for mean shift convergence. */
 	protected final int max_iterations = 1000;
 	
+	/** Size of quantization bins as a fraction of bandwidths (zero to disable binning). */
+	protected double binning = 0.0;
+	
+	/** True when the angular axis is periodic. */
+	protected boolean periodic = false;
+	
+	/** Radius of early assignment to converged points as a fraction of bandwidths (zero to disable). */
+	protected double assignmentRadius = 0.0;
+	
+	/** Relaxation factor of mean-shift steps (one for standard steps). */
+	protected double relaxation = 1.0;
+	
+	/** Total number of mean-shift iterations of last run. */
+	protected long numberOfIterations = 0;
+	
+	/** Number of seeds assigned early to converged points during last run. */
+	protected long numberOfEarlyAssignments = 0;
+	
+	/** Executor running the parallel tasks (null to use a temporary one for each run). */
+	protected ExecutorService executor = null;
+	
+	/** Number of seeds taken at once by a task (load balancing granularity). */
+	protected int chunkSize = 16;
+	
+	/** Lower bound of the angular axis (when periodic). */
+	protected static final double minTheta = -Math.PI/2.0;
+	
+	/** Upper bound of the angular axis (when periodic). */
+	protected static final double maxTheta = Math.PI/2.0;
+	
 	/**
 	 * Default constructor.
 	 * Isotropic standard (bandwidth equal to 1 in both 
@@ -68,16 +106,41 @@ public class MeanShift {
 	}
 	
 	/**
-	 * Full constructor.
-	 * @param k The kernel to use for density estimate.
+	 * Constructor.
+	 * Gaussian kernel is used as default.
 	 * @param h The bandwidths for both components as a <code>HoughPoint</code>
 	 */
 	public MeanShift(HoughPoint h) {
+		this(h, new GaussianKernel());
+	}
+	
+	/**
+	 * Full constructor.
+	 * @param h The bandwidths for both components as a <code>HoughPoint</code>
+	 * @param k The kernel to use for density estimate.
+	 */
+	public MeanShift(HoughPoint h, Kernel k) {
 		this.h = h;
+		this.kernel = k;
 		
 		this.labels = null;
 		this.modes = null;
-		this.labels = null;
+	}
+	
+	/**
+	 * Set the kernel used for density estimate.
+	 * @param k Any kernel.
+	 */
+	public void setKernel(Kernel k) {
+		this.kernel = k;
+	}
+	
+	/**
+	 * Get the kernel used for density estimate.
+	 * @return Currently used kernel.
+	 */
+	public Kernel getKernel() {
+		return this.kernel;
 	}
 	
 	/**
@@ -97,160 +160,651 @@ public class MeanShift {
 	}
 	
 	/**
-	 * Inner class to encapsulate a data point and its position in the list.
-	 * This is used at the reduce step in parallelization.
-	 * @author julien.pontabry
+	 * Set the size of the bins used to quantize data points before running.
+	 * A small fraction of the bandwidths (e.g. 0.1) reduces a lot the number of
+	 * points to process when many data points are nearly identical.
+	 * @param binning Size of bins as a fraction of bandwidths (zero to disable binning).
+	 */
+	public void setBinning(double binning) {
+		this.binning = binning;
+	}
+	
+	/**
+	 * Get the size of the bins used to quantize data points before running.
+	 * @return Size of bins as a fraction of bandwidths (zero when binning is disabled).
+	 */
+	public double getBinning() {
+		return this.binning;
+	}
+	
+	/**
+	 * Set the periodicity of the angular axis.
+	 * 
+	 * When periodic, the angular axis is [-pi/2,pi/2) and a point (theta,rho)
+	 * is identified with (theta+pi,-rho) and (theta-pi,-rho), i.e. the same line
+	 * in image space. Points near one border of the angular range contribute to
+	 * the density near the other border, and modes are given within the range.
+	 * The angular bandwidth is supposed to be small compared to pi.
+	 * 
+	 * @param periodic True to make the angular axis periodic.
+	 */
+	public void setPeriodic(boolean periodic) {
+		this.periodic = periodic;
+	}
+	
+	/**
+	 * Get the periodicity of the angular axis.
+	 * @return True when the angular axis is periodic.
+	 */
+	public boolean isPeriodic() {
+		return this.periodic;
+	}
+	
+	/**
+	 * Set the radius of early assignment of seeds.
+	 * 
+	 * When enabled, a seed whose trajectory comes within this radius of a data
+	 * point that has already converged (or that has been assigned) stops and
+	 * takes the converged position of that point. Neighboring seeds then do not
+	 * retrace the same trajectories. The radius should be small compared to
+	 * the bandwidths (e.g. 0.1), since seeds close to the boundary of a basin
+	 * of attraction may be assigned to the neighboring mode.
+	 * 
+	 * Early assignment makes the results nondeterministic: a seed stops on
+	 * whichever point has converged first, which depends on the order of
+	 * seeds and on the scheduling of the parallel tasks. Labels of points close to the boundary of a basin,
+	 * and thus the positions and counts of modes, may change between runs on
+	 * the same data. Disable it when reproducible results are needed.
+	 * 
+	 * @param radius Radius as a fraction of bandwidths (zero to disable early assignment).
+	 */
+	public void setAssignmentRadius(double radius) {
+		this.assignmentRadius = radius;
+	}
+	
+	/**
+	 * Get the radius of early assignment of seeds.
+	 * @return Radius as a fraction of bandwidths (zero when early assignment is disabled).
+	 */
+	public double getAssignmentRadius() {
+		return this.assignmentRadius;
+	}
+	
+	/**
+	 * Set the relaxation factor of mean-shift steps.
+	 * 
+	 * Each step moves the current position by the mean-shift vector multiplied
+	 * by this factor. Over-relaxed steps (factor in ]1,2[, e.g. 1.5) need less
+	 * iterations on the smooth slopes of the density, where the standard
+	 * mean shift is known to converge slowly.
+	 * 
+	 * @param relaxation Relaxation factor in ]0,2[ (one for standard mean-shift steps).
+	 * @throws IllegalArgumentException When the factor is not in ]0,2[.
 	 */
-	protected class DataPoint {
-		public HoughPoint point = null;
-		public int position = 0;
+	public void setRelaxation(double relaxation) {
+		if (Double.compare(relaxation, 0.0) <= 0 || Double.compare(relaxation, 2.0) >= 0)
+			throw new IllegalArgumentException("Relaxation factor must be in ]0,2[!");
 		
-		public DataPoint(HoughPoint point, int position) {
-			this.point = point;
-			this.position = position;
-		}
+		this.relaxation = relaxation;
+	}
+	
+	/**
+	 * Get the relaxation factor of mean-shift steps.
+	 * @return Relaxation factor (one for standard mean-shift steps).
+	 */
+	public double getRelaxation() {
+		return this.relaxation;
+	}
+	
+	/**
+	 * Set the executor running the parallel tasks.
+	 * The executor is not shut down by the mean-shift procedure.
+	 * @param executor Any executor (null to create and shut down a temporary one for each run).
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Get the executor running the parallel tasks.
+	 * @return Current executor (null when a temporary one is used for each run).
+	 */
+	public ExecutorService getExecutor() {
+		return this.executor;
+	}
+	
+	/**
+	 * Set the number of seeds taken at once by a task.
+	 * 
+	 * The seeds are dispatched dynamically to the tasks by chunks of this size.
+	 * Smaller chunks give a better load balance, larger chunks reduce the
+	 * contention on the shared cursor.
+	 * 
+	 * @param chunkSize Number of seeds per chunk (at least one).
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Get the number of seeds taken at once by a task.
+	 * @return Number of seeds per chunk.
+	 */
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+	
+	/**
+	 * Get the total number of mean-shift iterations of the last run.
+	 * @return Number of iterations over all seeds.
+	 */
+	public long getNumberOfIterations() {
+		return this.numberOfIterations;
+	}
+	
+	/**
+	 * Get the number of seeds assigned early during the last run.
+	 * @return Number of seeds that stopped on an already converged point.
+	 * @see #setAssignmentRadius(double)
+	 */
+	public long getNumberOfEarlyAssignments() {
+		return this.numberOfEarlyAssignments;
 	}
 	
 	/**
 	 * Run the mean-shift procedure.
 	 * @param data Input data points.
+	 * @see #runWith(HoughSpace)
 	 */
 	public void runWith(List<HoughPoint> data) {
-		// Initialize output
-		Integer[] labels = new Integer[data.size()];
-		this.modes = new Vector<HoughPoint>();
+		this.runWith(new HoughSpace(data));
+	}
+	
+	/**
+	 * Run the mean-shift procedure.
+	 * 
+	 * The data points are indexed in a uniform grid with cells of the size
+	 * of the truncated kernel support, so that each mean-shift step only
+	 * visits the points in the 3x3 cells around the current position.
+	 * 
+	 * When binning is enabled, the data points are first quantized into
+	 * bins and the procedure is run on the weighted bin centers (one seed
+	 * per occupied bin); the label of each data point is the label of its bin.
+	 * 
+	 * The labels are also set in the input container.
+	 * 
+	 * @param data Input data points.
+	 * @see #setBinning(double)
+	 */
+	public void runWith(HoughSpace data) {
+		// Setup working set
+		HoughSpace points = data;
+		double[] weights = null;
+		int[] bins = null;
+		
+		if (Double.compare(this.binning, 0.0) > 0) {
+			bins = new int[data.size];
+			
+			// Quantize data points (the bin center is the mean of its points
+			// and its weight is the number of points)
+			double binWidth = this.binning * this.h.getX(), binHeight = this.binning * this.h.getY();
+			long[] keys = new long[data.size];
+			
+			for (int i = 0; i < data.size; i++)
+				keys[i] = ((long)Math.floor(data.theta[i] / binWidth) << 32) | ((long)Math.floor(data.rho[i] / binHeight) & 0xffffffffL);
+			
+			// Find the distinct keys by sorting them
+			long[] sortedKeys = keys.clone();
+			Arrays.sort(sortedKeys);
+			int numberOfKeys = 0;
+			
+			for (int k = 0; k < sortedKeys.length; k++) {
+				if (k == 0 || sortedKeys[k] != sortedKeys[k-1])
+					sortedKeys[numberOfKeys++] = sortedKeys[k];
+			}
+			
+			// Number bins by order of their first point
+			int[] binsIndices = new int[numberOfKeys];
+			Arrays.fill(binsIndices, -1);
+			HoughSpace sums = new HoughSpace();
+			weights = new double[data.size];
+			
+			for (int i = 0; i < data.size; i++) {
+				int k = Arrays.binarySearch(sortedKeys, 0, numberOfKeys, keys[i]);
+				
+				if (binsIndices[k] < 0) {
+					binsIndices[k] = sums.size;
+					sums.add(0.0, 0.0);
+				}
+				
+				int bin = binsIndices[k];
+				sums.theta[bin] += data.theta[i]; sums.rho[bin] += data.rho[i]; weights[bin] += 1.0;
+				bins[i] = bin;
+			}
+			
+			for (int b = 0; b < sums.size; b++) {
+				sums.theta[b] /= weights[b];
+				sums.rho[b]   /= weights[b];
+			}
+			
+			points = sums;
+		}
+		
+		// Run and map labels back to data points
+		int[] labels;
+		
+		if (this.executor != null)
+			labels = this.runWith(points.theta, points.rho, weights, points.size, this.executor);
+		else {
+			try (ExecutionContext context = new ExecutionContext()) {
+				labels = this.runWith(points.theta, points.rho, weights, points.size, context.getExecutor());
+			}
+		}
+		
+		if (labels == null) {
+			this.modes = new HoughSpace();
+			this.labels = new int[0];
+		}
+		else if (bins != null) {
+			this.labels = new int[data.size];
+			
+			for (int i = 0; i < data.size; i++)
+				this.labels[i] = labels[bins[i]];
+		}
+		else
+			this.labels = labels;
+		
+		data.labels = this.labels;
+	}
+	
+	/**
+	 * Run the mean-shift procedure on weighted points, starting from each point.
+	 * 
+	 * The iterations do not allocate any object: each seed is followed with
+	 * primitive variables and the converged points are written in place.
+	 * 
+	 * When early assignment is enabled, the converged points are published
+	 * through an atomic array of flags, so that the seeds running in other
+	 * threads can stop on them.
+	 * 
+	 * @param thetas Input points coordinates on first axis.
+	 * @param rhos Input points coordinates on second axis.
+	 * @param weights Input points weights (null for unit weights).
+	 * @param size Number of input points.
+	 * @param executor Executor running the parallel tasks.
+	 * @return Labels of input points (modes are set) or null when the process failed.
+	 */
+	protected int[] runWith(double[] thetas, double[] rhos, double[] weights, int size, ExecutorService executor) {
+		double[] convergedThetas = new double[size];
+		double[]   convergedRhos = new double[size];
+		
+		// Setup spatial index of data points (support of the kernel is u^2 < maxDomain)
+		double support = Math.sqrt(MeanShift.maxDomain);
+		double supportTheta = support * this.h.getX();
+		GridIndex grid = new GridIndex(thetas, rhos, size, supportTheta, support * this.h.getY());
+		
+		// Setup early assignment and statistics
+		AtomicIntegerArray assigned = Double.compare(this.assignmentRadius, 0.0) > 0 ? new AtomicIntegerArray(size) : null;
+		double assignmentRadius2 = Math.min(this.assignmentRadius * this.assignmentRadius, MeanShift.maxDomain);
+		LongAdder iterations = new LongAdder();
+		LongAdder earlyAssignments = new LongAdder();
 		
 		// Setup mean-shift for data points to be executed in parallel
-		List<Callable<Vector<DataPoint>>> tasks = new Vector<>();
+		List<Callable<Void>> tasks = new Vector<>();
 		
-		// Cut the process in C+1 pieces (where C is the number of cores)
-		// to accelerate the process (avoid many thread creations/destructions
-		// and use maximum CPU for computing only.
-		int groupSize = 1;
-		int cores = Runtime.getRuntime().availableProcessors()+1;
+		// Seeds are taken by small chunks from a shared cursor by one task
+		// per thread, so that the tasks running seeds in dense regions (which
+		// need many more iterations) do not delay the whole process.
+		AtomicInteger cursor = new AtomicInteger(0);
+		int chunkSize = Math.max(this.chunkSize, 1);
+		int cores = ExecutionContext.getParallelism(executor);
 		
-		if (cores <= data.size()) // to prevent the case when data size is less than cores and groups is zero
-			groupSize = data.size()/cores;
-
-		for (int i = 0; i < data.size(); i+=groupSize) {
-			final int startIndex = i;
-			final int sizeIndex = groupSize;
-
+		for (int i = 0; i < Math.min(cores, size); i++) {
 			tasks.add(() -> {
-				Vector<DataPoint> dataPoints = new Vector<>();
+				double[] sums = new double[5];
+				long taskIterations = 0, taskEarlyAssignments = 0;
 				
-				for (int j = startIndex; j < startIndex+sizeIndex && j < data.size(); j++) {
-					// Initialization of the mean shift
-					HoughPoint p = new HoughPoint(data.get(j));
+				for (int startIndex = cursor.getAndAdd(chunkSize); startIndex < size; startIndex = cursor.getAndAdd(chunkSize)) {
+					for (int j = startIndex; j < Math.min(startIndex+chunkSize, size); j++) {
+						// Initialization of the mean shift
+						double pTheta = thetas[j], pRho = rhos[j];
 
-					double error;
-					int iteration = 0;
+						double error;
+						int iteration = 0;
+						int nearest = -1;
 						
-					// Push iteratively point to closest mode
-					do {
-						double sumOfWeights = 0.0;
-						double x = 0.0, y = 0.0;
-
-						for (HoughPoint q : data) {
-							// Compute Gaussian kernel distance only for close points
-							// Use partial distance to speed up the process
-							double  tmpx = (p.getX() - q.getX()) / this.h.getX();
-							double tmpx2 = tmpx*tmpx;
+						// Push iteratively point to closest mode
+						do {
+							sums[0] = 0.0; sums[1] = 0.0; sums[2] = 0.0;
+							sums[3] = assignmentRadius2; sums[4] = -1.0;
+							this.accumulate(grid, thetas, rhos, weights, assigned, pTheta, pRho, 0.0, 1.0, sums);
+						
+							// Add the images of the points on the other side of the angular range
+							if (this.periodic) {
+								if (Double.compare(pTheta - supportTheta, MeanShift.minTheta) < 0)
+									this.accumulate(grid, thetas, rhos, weights, assigned, pTheta, pRho, -Math.PI, -1.0, sums);
 							
-							if (Double.compare(tmpx2, MeanShift.maxDomain) < 0) { // x < 5
-								double tmpy = (p.getY() - q.getY()) / this.h.getY();
-								double tmpu2 = tmpx2 + tmpy*tmpy;
-								
-								if (Double.compare(tmpu2, MeanShift.maxDomain) < 0) { 
-									double weight = Math.exp(-0.5 * tmpu2);
-									
-									sumOfWeights += weight;
-									x += q.getX() * weight;
-									y += q.getY() * weight;
-								}
+								if (Double.compare(pTheta + supportTheta, MeanShift.maxTheta) >= 0)
+									this.accumulate(grid, thetas, rhos, weights, assigned, pTheta, pRho, Math.PI, -1.0, sums);
 							}
-						} // for each point
-
-						HoughPoint mean = new HoughPoint(x/sumOfWeights, y/sumOfWeights);
-						double x_diff = mean.getX()-p.getX(), y_diff = mean.getY()-p.getY();
-						error = x_diff*x_diff + y_diff*y_diff;
-						p.setLocation(mean);
+						
+							// Stop on the closest converged point within assignment radius
+							nearest = (int)sums[4];
+							if (nearest >= 0)
+								break;
+						
+							double sumOfWeights = sums[0], x = sums[1], y = sums[2];
+							
+							// Stop at the current position when no point weights in the kernel
+							if (Double.compare(sumOfWeights, 0.0) <= 0)
+								break;
+							
+							double meanTheta = x/sumOfWeights, meanRho = y/sumOfWeights;
+							double x_diff = meanTheta-pTheta, y_diff = meanRho-pRho;
+							error = x_diff*x_diff + y_diff*y_diff;
+							pTheta += this.relaxation * x_diff;
+							pRho += this.relaxation * y_diff;
 
-						iteration++;
-					} while (Double.compare(error, this.tolerance) > 0 && iteration < max_iterations);
+							iteration++;
+						} while (Double.compare(error, this.tolerance) > 0 && iteration < max_iterations);
+					
+						taskIterations += iteration;
 					
-					// The final mode is the updated point
-					dataPoints.add(new DataPoint(p, j));
+						if (nearest >= 0) {
+							// The converged point is already within the angular range
+							pTheta = convergedThetas[nearest];
+							  pRho = convergedRhos[nearest];
+							taskEarlyAssignments++;
+						}
+					
+						// Map the final point back to the angular range
+						if (this.periodic) {
+							while (Double.compare(pTheta, MeanShift.maxTheta) >= 0) {
+								pTheta -= Math.PI; pRho = -pRho;
+							}
+						
+							while (Double.compare(pTheta, MeanShift.minTheta) < 0) {
+								pTheta += Math.PI; pRho = -pRho;
+							}
+						}
+					
+						// The final mode is the updated point
+						convergedThetas[j] = pTheta;
+						  convergedRhos[j] = pRho;
+					
+						// Publish the converged point
+						if (assigned != null)
+							assigned.set(j, 1);
+					}
 				}
 				
-				return dataPoints;
+				iterations.add(taskIterations);
+				earlyAssignments.add(taskEarlyAssignments);
+				
+				return null;
 			});
 		}
 		
 		// Run threads in parallel and reduce results
-		ExecutorService executor = Executors.newWorkStealingPool();
-		
 	    try {
-	        executor.invokeAll(tasks)
-	        	.stream()
-	        	.map(future -> {
-	        		try {
-	        			return future.get();
-	        		}
-	        		catch (Exception e) {
-	        			throw new IllegalStateException(e);
-	        		}
-	        	})
-	        	.forEach(result -> {
-	        		for (int i = 0; i < result.size(); i++)
-	        			labels[result.get(i).position] = this.mergeOrAddMode(result.get(i).point);
-	        	});
+	        for (Future<Void> future : executor.invokeAll(tasks))
+	        	future.get();
+	        
+	        this.numberOfIterations = iterations.sum();
+	        this.numberOfEarlyAssignments = earlyAssignments.sum();
 	        
-	        this.labels = new Vector<Integer>(Arrays.asList(labels));
+	        return this.mergeModes(convergedThetas, convergedRhos, executor);
 	    }
 	    catch (Exception e) {
-	    	this.modes = new Vector<HoughPoint>();
-	    	this.labels = new Vector<Integer>();
 	    	IJ.error("Exception", "An exception occured!\n" + e.getMessage());
+	    	return null;
 	    }
 	}
 	
 	/**
-	 * Add a candidate mode or merge it with a close existing mode.
-	 * @param p The candidate mode.
-	 * @return The position of the added/merged mode in the list.
+	 * Accumulate the kernel weights and weighted coordinates of the points
+	 * within kernel support of a position.
+	 * 
+	 * The points are considered through their images (theta+shift, sign*rho),
+	 * which is used to handle the periodicity of the angular axis.
+	 * 
+	 * When early assignment is enabled, the closest converged point with
+	 * normalized squared distance below <code>sums[3]</code> is also looked
+	 * for; its squared distance and position are set in <code>sums[3]</code>
+	 * and <code>sums[4]</code>.
+	 * 
+	 * @param grid Spatial index of points.
+	 * @param thetas Points coordinates on first axis.
+	 * @param rhos Points coordinates on second axis.
+	 * @param weights Points weights (null for unit weights).
+	 * @param assigned Flags of converged points (null to disable early assignment).
+	 * @param pTheta Position on first axis.
+	 * @param pRho Position on second axis.
+	 * @param shift Shift of images of points on first axis.
+	 * @param sign Sign of images of points on second axis.
+	 * @param sums Output accumulators (sum of weights, sum of weighted coordinates on first and second axes, closest converged point).
 	 */
-	protected Integer mergeOrAddMode(HoughPoint p) {
-		boolean found = false;
-		int i = 0;
+	private void accumulate(GridIndex grid, double[] thetas, double[] rhos, double[] weights, AtomicIntegerArray assigned, double pTheta, double pRho, double shift, double sign, double[] sums) {
+		double hTheta = this.h.getX(), hRho = this.h.getY();
+		double sumOfWeights = 0.0;
+		double x = 0.0, y = 0.0;
+		
+		// Look for points around the pre-image of the position
+		int column = grid.getColumn(pTheta - shift), row = grid.getRow(sign * pRho);
 
+		for (int r = Math.max(row-1, 0); r <= Math.min(row+1, grid.getRows()-1); r++) {
+			for (int c = Math.max(column-1, 0); c <= Math.min(column+1, grid.getColumns()-1); c++) {
+				for (int k = grid.getCellStart(c, r); k < grid.getCellEnd(c, r); k++) {
+					int q = grid.getIndex(k);
+					double qTheta = thetas[q] + shift, qRho = sign * rhos[q];
+					
+					// Compute kernel distance only for close points
+					// Use partial distance to speed up the process
+					double  tmpx = (pTheta - qTheta) / hTheta;
+					double tmpx2 = tmpx*tmpx;
+					
+					if (Double.compare(tmpx2, MeanShift.maxDomain) < 0) { // x < 5
+						double tmpy = (pRho - qRho) / hRho;
+						double tmpu2 = tmpx2 + tmpy*tmpy;
+						
+						if (Double.compare(tmpu2, MeanShift.maxDomain) < 0) { 
+							double weight = this.kernel.weight(tmpu2);
+							
+							if (weights != null)
+								weight *= weights[q];
+							
+							sumOfWeights += weight;
+							x += qTheta * weight;
+							y += qRho * weight;
+							
+							if (assigned != null && Double.compare(tmpu2, sums[3]) < 0 && assigned.get(q) != 0) {
+								sums[3] = tmpu2;
+								sums[4] = q;
+							}
+						}
+					}
+				}
+			}
+		} // for each point in kernel support
+		
+		sums[0] += sumOfWeights;
+		sums[1] += x;
+		sums[2] += y;
+	}
+	
+	/**
+	 * Merge the converged points that are close to each other into modes.
+	 * 
+	 * Close converged points are found with a grid index of cell size equal
+	 * to the merging precision, and are joined in parallel in a concurrent
+	 * union-find structure. Each group is represented by its first converged
+	 * point, and modes are ordered by their representative position (thus the
+	 * first point always gets the label zero).
+	 * 
+	 * @param thetas Converged points coordinates on first axis.
+	 * @param rhos Converged points coordinates on second axis.
+	 * @param executor Executor running the parallel tasks.
+	 * @return Labels of converged points (modes are set).
+	 * @throws InterruptedException
+	 */
+	protected int[] mergeModes(double[] thetas, double[] rhos, ExecutorService executor) throws InterruptedException {
+		int size = thetas.length;
+		double mergeEpsilon2 = this.mergeEpsilon * this.mergeEpsilon;
+		GridIndex grid = new GridIndex(thetas, rhos, size, this.mergeEpsilon, this.mergeEpsilon);
+		
+		// Join close converged points in parallel
+		AtomicIntegerArray parents = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++)
+			parents.set(i, i);
+		
+		List<Callable<Void>> tasks = new Vector<>();
+		int cores = ExecutionContext.getParallelism(executor);
+		int groupSize = Math.max(1, size/cores);
 		
-		for (i = 0; i < this.modes.size(); i++) {
-			HoughPoint mode = this.modes.get(i);
+		for (int i = 0; i < size; i+=groupSize) {
+			final int startIndex = i;
+			final int   endIndex = Math.min(i+groupSize, size);
 			
-			double xDiff = mode.getX() - p.getX();
-			double yDiff = mode.getY() - p.getY();
-
+			tasks.add(() -> {
+				for (int j = startIndex; j < endIndex; j++) {
+					MeanShift.joinCloseModes(grid, thetas, rhos, parents, j, thetas[j], rhos[j], mergeEpsilon2);
+					
+					// Join with the images of modes on the other side of the angular range
+					if (this.periodic) {
+						if (Double.compare(thetas[j] - this.mergeEpsilon, MeanShift.minTheta) < 0)
+							MeanShift.joinCloseModes(grid, thetas, rhos, parents, j, thetas[j]+Math.PI, -rhos[j], mergeEpsilon2);
+						
+						if (Double.compare(thetas[j] + this.mergeEpsilon, MeanShift.maxTheta) >= 0)
+							MeanShift.joinCloseModes(grid, thetas, rhos, parents, j, thetas[j]-Math.PI, -rhos[j], mergeEpsilon2);
+					}
+				}
+				
+				return null;
+			});
+		}
+		
+		for (Future<Void> future : executor.invokeAll(tasks)) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		
+		// Number modes by order of their representative
+		this.modes = new HoughSpace();
+		int[] labels = new int[size];
+		int[] modesLabels = new int[size];
+		
+		for (int i = 0; i < size; i++) {
+			int root = MeanShift.find(parents, i);
+			
+			if (root == i) {
+				modesLabels[i] = this.modes.size;
+				this.modes.add(thetas[i], rhos[i]);
+			}
 			
-			if (Double.compare(Math.sqrt(xDiff*xDiff + yDiff*yDiff), this.mergeEpsilon) < 0) {
-				found = true;
-				break;
+			labels[i] = modesLabels[root];
+		}
+		
+		return labels;
+	}
+	
+	/**
+	 * Join a converged point with the previous converged points close to a position.
+	 * @param grid Spatial index of converged points.
+	 * @param thetas Converged points coordinates on first axis.
+	 * @param rhos Converged points coordinates on second axis.
+	 * @param parents Union-find structure.
+	 * @param j Position of the converged point to join.
+	 * @param theta Position on first axis (the converged point or its image).
+	 * @param rho Position on second axis (the converged point or its image).
+	 * @param mergeEpsilon2 Squared merging precision.
+	 */
+	private static void joinCloseModes(GridIndex grid, double[] thetas, double[] rhos, AtomicIntegerArray parents, int j, double theta, double rho, double mergeEpsilon2) {
+		int column = grid.getColumn(theta), row = grid.getRow(rho);
+		
+		for (int r = Math.max(row-1, 0); r <= Math.min(row+1, grid.getRows()-1); r++) {
+			for (int c = Math.max(column-1, 0); c <= Math.min(column+1, grid.getColumns()-1); c++) {
+				for (int k = grid.getCellStart(c, r); k < grid.getCellEnd(c, r); k++) {
+					int q = grid.getIndex(k);
+					
+					if (q < j) {
+						double xDiff = thetas[q] - theta;
+						double yDiff = rhos[q] - rho;
+						
+						if (Double.compare(xDiff*xDiff + yDiff*yDiff, mergeEpsilon2) < 0)
+							MeanShift.union(parents, q, j);
+					}
+				}
 			}
 		}
+	}
+	
+	/**
+	 * Find the representative of an element in a concurrent union-find structure.
+	 * @param parents Parents of the elements.
+	 * @param i Input element.
+	 * @return The representative of the group of the element.
+	 */
+	private static int find(AtomicIntegerArray parents, int i) {
+		int parent;
 		
-		if (!found)
-			this.modes.add(p);
+		while ((parent = parents.get(i)) != i) {
+			// Path halving
+			int grandParent = parents.get(parent);
+			
+			if (grandParent != parent)
+				parents.compareAndSet(i, parent, grandParent);
+			
+			i = grandParent;
+		}
 		
 		return i;
 	}
 	
+	/**
+	 * Join the groups of two elements in a concurrent union-find structure.
+	 * The representative of the joined group is always the smallest element.
+	 * @param parents Parents of the elements.
+	 * @param i First element.
+	 * @param j Second element.
+	 */
+	private static void union(AtomicIntegerArray parents, int i, int j) {
+		while (true) {
+			int rootI = MeanShift.find(parents, i);
+			int rootJ = MeanShift.find(parents, j);
+			
+			if (rootI == rootJ)
+				return;
+			
+			// Link the greatest root below the smallest one
+			if (rootI < rootJ) {
+				if (parents.compareAndSet(rootJ, rootJ, rootI))
+					return;
+			}
+			else {
+				if (parents.compareAndSet(rootI, rootI, rootJ))
+					return;
+			}
+		}
+	}
+	
 	/**
 	 * Get the labels of data points.
 	 * The algorithm must be ran on some data points before (output is null otherwise).
 	 * @return List of integers (labels).
 	 */
 	public List<Integer> getLabels() {
-		return this.labels;
+		if (this.labels == null)
+			return null;
+		
+		List<Integer> labels = new Vector<Integer>(this.labels.length);
+		for (int label : this.labels)
+			labels.add(label);
+		
+		return labels;
 	}
 	
 	/**
@@ -259,6 +813,18 @@ public class MeanShift {
 	 * @return List of modes as points.
 	 */
 	public List<HoughPoint> getModes() {
+		if (this.modes == null)
+			return null;
+		
+		return this.modes.toList();
+	}
+	
+	/**
+	 * Get the output modes of the kernel density estimate of data points.
+	 * The algorithm must be ran on some data points before (output is null otherwise).
+	 * @return Modes in a Hough space container (labels of modes are not set).
+	 */
+	public HoughSpace getModesSpace() {
 		return this.modes;
 	}
 }
@@ -0,0 +1,385 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import coordinates.ImagePoint;
+import coordinates.ImagePointArray;
+import ij.gui.Line;
+
+/**
+ * Progressive detection of lines in Hough space.
+ *
+ * Local models are sampled from the remaining foreground points and the
+ * strongest mode is found. Its segments are built from the remaining points
+ * within tolerance of its line, and the points within the thickness
+ * sensitivity of its line are then removed from sampling and neighborhoods.
+ * The number of samples is proportional to the number of remaining points,
+ * so that each step is faster as the image is explained, and the points of a
+ * detected fiber cannot give redundant modes.
+ *
+ * The detection stops when the estimated number of points supporting the
+ * strongest mode is below the selection sensitivity times the support of the
+ * first mode (the same criterion than the selection of modes at once).
+ *
+ * @author julien.pontabry
+ */
+public class ProgressiveHoughDetection {
+	/** Number of samples when no point has been removed. */
+	protected int numberOfPoints = 1000;
+
+	/** Sensitivity to selection of candidates points (in [0,1]). */
+	protected double selectionSensitivity;
+
+	/** Soft threshold for angle (in degrees). */
+	protected double angularSensitivity;
+
+	/** Soft threshold for line thickness (in pixels). */
+	protected double thicknessSensitivity;
+
+	/** Engine finding the modes in Hough space. */
+	protected HoughEngine engine = HoughEngine.MEAN_SHIFT;
+
+	/** Size of quantization bins of mean-shift (as a fraction of the bandwidths, zero to disable binning). */
+	protected double binning = 0.0;
+
+	/** Maximal number of lines to detect. */
+	protected int maxLines = 1000;
+
+	/** True to find the gaps of segments on the projection of points on each line (without sorting). */
+	protected boolean projectedGaps = false;
+
+	/** Receiver of the segments of each line as soon as they are built (none when null). */
+	protected SegmentListener listener = null;
+
+	/** Executor running the parallel tasks (a temporary pool is used when null). */
+	protected ExecutorService executor = null;
+
+	/** Points in Hough space of detected lines during last run. */
+	protected HoughSpace lines = null;
+
+	/** Total number of samples drawn during last run. */
+	protected int numberOfSamples = 0;
+
+	/**
+	 * Constructor.
+	 * @param selectionSensitivity Sensitivity to selection of candidates points (in [0,1]).
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 */
+	public ProgressiveHoughDetection(double selectionSensitivity, double angularSensitivity, double thicknessSensitivity) {
+		this.selectionSensitivity = selectionSensitivity;
+		this.angularSensitivity   = angularSensitivity;
+		this.thicknessSensitivity = thicknessSensitivity;
+	}
+
+	/**
+	 * Detect lines progressively and build their segments.
+	 * The foreground points of the lines are removed from the sampler.
+	 * @param sampler Sampler of local models of skeleton image.
+	 * @param width Width of the skeleton image.
+	 * @param height Height of the skeleton image.
+	 * @param seed Seed of random sampling (the seed of each step is drawn from it).
+	 * @param maxGap Maximal allowed gap between two successive segments.
+	 * @param minLength Minimal allowed length of a segment.
+	 * @param tolerance Tolerance for pixel aggregation around line.
+	 * @return A list of segments as Line ROI.
+	 */
+	public List<Line> runWith(LocalModelSampler sampler, int width, int height, long seed, double maxGap, double minLength, double tolerance) {
+		if (this.executor != null)
+			return this.runWith(sampler, width, height, seed, maxGap, minLength, tolerance, this.executor);
+
+		try (ExecutionContext context = new ExecutionContext()) {
+			return this.runWith(sampler, width, height, seed, maxGap, minLength, tolerance, context.getExecutor());
+		}
+	}
+
+	/**
+	 * Detect lines progressively and build their segments.
+	 * The foreground points of the lines are removed from the sampler.
+	 * @param sampler Sampler of local models of skeleton image.
+	 * @param width Width of the skeleton image.
+	 * @param height Height of the skeleton image.
+	 * @param seed Seed of random sampling (the seed of each step is drawn from it).
+	 * @param maxGap Maximal allowed gap between two successive segments.
+	 * @param minLength Minimal allowed length of a segment.
+	 * @param tolerance Tolerance for pixel aggregation around line.
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return A list of segments as Line ROI.
+	 */
+	protected List<Line> runWith(LocalModelSampler sampler, int width, int height, long seed, double maxGap, double minLength, double tolerance, ExecutorService executor) {
+		SplittableRandom generator = new SplittableRandom(seed);
+		ImagePointArray foregroundPoints = sampler.getForegroundPoints();
+		ImagePoint origin = new ImagePoint(width/2, height/2);
+		List<Line> segments = new Vector<Line>();
+
+		this.lines = new HoughSpace();
+		this.numberOfSamples = 0;
+
+		// Bitmap of remaining points and their positions in foreground points
+		boolean[] bitmap = new boolean[width * height];
+		int[]    indices = new int[width * height];
+
+		for (int i = 0; i < foregroundPoints.size; i++) {
+			if (!sampler.isRemoved(i)) {
+				int pixel = (foregroundPoints.y[i] + origin.y) * width + foregroundPoints.x[i] + origin.x;
+				bitmap[pixel] = true;
+				indices[pixel] = i;
+			}
+		}
+
+		double firstSupport = -1.0;
+		int totalNumberOfPoints = foregroundPoints.size;
+
+		while (sampler.getNumberOfActivePoints() > 0 && this.lines.size < this.maxLines) {
+			// Sample the remaining points (fewer samples as the image is explained)
+			int activePoints = sampler.getNumberOfActivePoints();
+			int size = (int)Math.ceil((double)this.numberOfPoints * activePoints / totalNumberOfPoints);
+			HoughSpace houghPoints = sampler.sample(size, generator.nextLong(), executor);
+			this.numberOfSamples += size;
+
+			// Find the strongest mode and estimate its number of supporting points
+			int[] count = new int[1];
+			HoughPoint mode = this.findStrongestMode(houghPoints, count, executor);
+
+			if (mode == null)
+				break;
+
+			double support = (double)count[0] / size * activePoints;
+
+			if (firstSupport < 0.0)
+				firstSupport = support;
+			else if (support <= this.selectionSensitivity * firstSupport)
+				break;
+
+			// Build segments of the remaining points of the line and remove the
+			// points explained by the mode (within the bandwidth of the line)
+			ImagePointArray linePoints = Extract_DNA_Fibers.selectLinePoints(bitmap, origin, width, height, mode, tolerance);
+			ImagePointArray bandPoints = Extract_DNA_Fibers.selectLinePoints(bitmap, origin, width, height, mode, Math.max(tolerance, this.thicknessSensitivity));
+			boolean[] mask = new boolean[foregroundPoints.size];
+
+			for (int i = 0; i < bandPoints.size; i++) {
+				int pixel = (bandPoints.y[i] + origin.y) * width + bandPoints.x[i] + origin.x;
+				mask[indices[pixel]] = true;
+				bitmap[pixel] = false;
+			}
+
+			if (sampler.remove(mask) == 0)
+				break;
+
+			this.lines.add(mode.theta, mode.rho);
+			List<Line> lineSegments = this.projectedGaps ?
+					Extract_DNA_Fibers.buildSegments(linePoints, mode, origin, maxGap, minLength) :
+					Extract_DNA_Fibers.buildSegments(linePoints, origin, width, height, maxGap, minLength);
+			segments.addAll(lineSegments);
+
+			if (this.listener != null)
+				this.listener.segmentsBuilt(mode, lineSegments);
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Find the mode of points in Hough space with the most contributing points.
+	 * @param houghPoints Input points in Hough space.
+	 * @param count Output number of contributing points of the mode (first element).
+	 * @param executor Executor running the parallel tasks (it is not shut down).
+	 * @return The strongest mode, or null when there is no point.
+	 */
+	protected HoughPoint findStrongestMode(HoughSpace houghPoints, int[] count, ExecutorService executor) {
+		if (houghPoints.isEmpty())
+			return null;
+
+		HoughPoint h = new HoughPoint(this.angularSensitivity * Math.PI/180.0, this.thicknessSensitivity);
+		HoughSpace modes;
+		int[] counts;
+
+		if (this.engine == HoughEngine.MEAN_SHIFT) {
+			MeanShift modesFinder = new MeanShift(h);
+			modesFinder.setBinning(this.binning);
+			modesFinder.setPeriodic(true);
+			modesFinder.setExecutor(executor);
+			modesFinder.runWith(houghPoints);
+			modes = modesFinder.getModesSpace();
+
+			// No mode when the process failed
+			if (houghPoints.labels == null || houghPoints.labels.length != houghPoints.size)
+				return null;
+
+			counts = new int[modes.size];
+			for (int i = 0; i < houghPoints.size; i++)
+				counts[houghPoints.labels[i]]++;
+		}
+		else {
+			HoughAccumulator modesFinder = (this.engine == HoughEngine.KERNEL_DENSITY) ? new KernelDensityGrid(h) : new HoughAccumulator(h);
+			modesFinder.setExecutor(executor);
+			modes = modesFinder.runWith(houghPoints);
+			counts = modesFinder.getScores();
+		}
+
+		int strongest = -1;
+		for (int i = 0; i < modes.size; i++) {
+			if (strongest < 0 || counts[i] > counts[strongest])
+				strongest = i;
+		}
+
+		if (strongest < 0)
+			return null;
+
+		count[0] = counts[strongest];
+
+		return modes.get(strongest);
+	}
+
+	/**
+	 * Set the number of samples when no point has been removed.
+	 * @param numberOfPoints Number of samples.
+	 */
+	public void setNumberOfPoints(int numberOfPoints) {
+		this.numberOfPoints = numberOfPoints;
+	}
+
+	/**
+	 * Get the number of samples when no point has been removed.
+	 * @return The number of samples.
+	 */
+	public int getNumberOfPoints() {
+		return this.numberOfPoints;
+	}
+
+	/**
+	 * Set the engine finding the modes in Hough space.
+	 * @param engine Engine.
+	 */
+	public void setEngine(HoughEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Get the engine finding the modes in Hough space.
+	 * @return The engine.
+	 */
+	public HoughEngine getEngine() {
+		return this.engine;
+	}
+
+	/**
+	 * Set the size of quantization bins of mean-shift.
+	 * @param binning Size of bins as a fraction of the bandwidths (zero to disable binning).
+	 * @see MeanShift#setBinning(double)
+	 */
+	public void setBinning(double binning) {
+		this.binning = binning;
+	}
+
+	/**
+	 * Get the size of quantization bins of mean-shift.
+	 * @return Size of bins as a fraction of the bandwidths (zero when binning is disabled).
+	 */
+	public double getBinning() {
+		return this.binning;
+	}
+
+	/**
+	 * Set the maximal number of lines to detect.
+	 * @param maxLines Maximal number of lines.
+	 */
+	public void setMaxLines(int maxLines) {
+		this.maxLines = maxLines;
+	}
+
+	/**
+	 * Get the maximal number of lines to detect.
+	 * @return The maximal number of lines.
+	 */
+	public int getMaxLines() {
+		return this.maxLines;
+	}
+
+	/**
+	 * Set the way gaps are found in the segments of each line.
+	 * @param projectedGaps True to find gaps on the projection of points on the line, false to sort the points.
+	 */
+	public void setProjectedGaps(boolean projectedGaps) {
+		this.projectedGaps = projectedGaps;
+	}
+
+	/**
+	 * Get the way gaps are found in the segments of each line.
+	 * @return True if gaps are found on the projection of points on the line, false if the points are sorted.
+	 */
+	public boolean getProjectedGaps() {
+		return this.projectedGaps;
+	}
+
+	/**
+	 * Set the receiver of the segments of each line.
+	 * @param listener Receiver of the segments as soon as they are built, or null.
+	 */
+	public void setListener(SegmentListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Get the receiver of the segments of each line.
+	 * @return The receiver of the segments, or null.
+	 */
+	public SegmentListener getListener() {
+		return this.listener;
+	}
+
+	/**
+	 * Set the executor running the parallel tasks.
+	 * @param executor Executor (it is not shut down), or null to use a temporary pool.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the executor running the parallel tasks.
+	 * @return The executor, or null when a temporary pool is used.
+	 */
+	public ExecutorService getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Get the lines detected during last run.
+	 * @return The lines as points in Hough space (in order of detection).
+	 */
+	public HoughSpace getLines() {
+		return this.lines;
+	}
+
+	/**
+	 * Get the number of samples drawn during last run.
+	 * @return The total number of samples.
+	 */
+	public int getNumberOfSamples() {
+		return this.numberOfSamples;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+/**
+ * Strategies gathering the foreground points of the selected lines when building segments.
+ *
+ * @author julien.pontabry
+ */
+public enum SegmentBuilder {
+	/** The band of each line is rasterized over the bitmap of foreground points (one task per line). */
+	LINE_BAND("Line band of each peak"),
+
+	/** The foreground points are assigned to all the lines in a single parallel pass (many lines). */
+	SINGLE_PASS("Single pass for all peaks (many peaks)");
+
+	/** Name displayed in user interface. */
+	private final String label;
+
+	/**
+	 * Constructor.
+	 * @param label Name displayed in user interface.
+	 */
+	private SegmentBuilder(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * Get the name displayed in user interface.
+	 * @return Name of the strategy.
+	 */
+	public String getLabel() {
+		return this.label;
+	}
+
+	/**
+	 * Get the names of all strategies displayed in user interface.
+	 * @return Names of the strategies (in declaration order).
+	 */
+	public static String[] getLabels() {
+		SegmentBuilder[] builders = SegmentBuilder.values();
+		String[] labels = new String[builders.length];
+
+		for (int i = 0; i < builders.length; i++)
+			labels[i] = builders[i].label;
+
+		return labels;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.List;
+
+import coordinates.HoughPoint;
+import ij.gui.Line;
+
+/**
+ * Defines a receiver of the segments of each line, as soon as they are built.
+ * 
+ * The segments are delivered in order of completion (not in order of lines),
+ * always from the thread which runs the detection, so a listener does not
+ * need to be thread-safe.
+ * 
+ * @author julien.pontabry
+ * @see Extract_DNA_Fibers#buildSegments(ij.ImagePlus, ij.gui.Roi, List, double, double, double, DetectionOptions)
+ */
+public interface SegmentListener {
+	/**
+	 * Receive the segments of a line.
+	 * @param line Line as a point in Hough space.
+	 * @param segments Segments of the line (in image coordinate system, possibly empty).
+	 */
+	public void segmentsBuilt(HoughPoint line, List<Line> segments);
+}
@@ -0,0 +1,371 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import coordinates.GridIndex;
+import coordinates.ImagePoint;
+import ij.gui.Line;
+
+/**
+ * Merging of duplicated segments.
+ *
+ * Close modes in Hough space often give overlapping segments on the same
+ * fiber. The segments are grouped from the longest to the shortest: each
+ * segment joins the closest group whose line (the line of its longest
+ * segment) is within the tolerances, the candidate groups being found with a
+ * grid index of lines in Hough space (with cells of the size of the
+ * tolerances, the angular axis being periodic, and a query on the second
+ * axis widened with the distance to the origin). Since segments are compared
+ * to the line of the group and not to each other, close parallel fibers are
+ * not chained into a single group. In each group, the segments are projected
+ * on the direction of the group and sorted by the start of their interval;
+ * the sorted intervals are then swept once, joining the overlapping intervals
+ * and the intervals separated by less than the maximal gap. The time is
+ * dominated by the sorts, that is O(n log n) for n segments.
+ *
+ * @author julien.pontabry
+ */
+public class SegmentMerger {
+	/** Lower bound of the angular axis. */
+	protected static final double minTheta = -Math.PI/2.0;
+
+	/** Upper bound of the angular axis. */
+	protected static final double maxTheta = Math.PI/2.0;
+
+	/** Soft threshold for angle (in degrees). */
+	protected double angularSensitivity;
+
+	/** Soft threshold for line thickness (in pixels). */
+	protected double thicknessSensitivity;
+
+	/** Maximal gap allowed between two merged segments (in pixels). */
+	protected double maxGap;
+
+	/** Number of groups of collinear segments found during last run. */
+	protected int numberOfGroups = 0;
+
+	/** Input segment of each merged segment found during last run (negative when several segments are joined). */
+	protected int[] sources = new int[0];
+
+	/**
+	 * Constructor.
+	 * @param angularSensitivity Soft threshold for angle (in degrees).
+	 * @param thicknessSensitivity Soft threshold for line thickness (in pixels).
+	 * @param maxGap Maximal gap allowed between two merged segments (in pixels).
+	 */
+	public SegmentMerger(double angularSensitivity, double thicknessSensitivity, double maxGap) {
+		this.angularSensitivity   = angularSensitivity;
+		this.thicknessSensitivity = thicknessSensitivity;
+		this.maxGap               = maxGap;
+	}
+
+	/**
+	 * Merge the overlapping or close collinear segments.
+	 * @param segments Input segments (in image coordinate system).
+	 * @param origin Origin of the coordinate system of lines in Hough space.
+	 * @return The merged segments, oriented along the direction of the longest segment of their group.
+	 */
+	public List<Line> runWith(List<Line> segments, ImagePoint origin) {
+		int size = segments.size();
+		List<Line> mergedSegments = new Vector<Line>();
+		this.numberOfGroups = 0;
+		this.sources = new int[0];
+
+		if (size == 0)
+			return mergedSegments;
+
+		// Lines of segments in Hough space
+		double[] thetas = new double[size];
+		double[]   rhos = new double[size];
+		double[] distances = new double[size];
+		double[] lengths2 = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			Line segment = segments.get(i);
+			double dx = segment.x2 - segment.x1;
+			double dy = segment.y2 - segment.y1;
+
+			// Direction of line is (-sin,cos)
+			double theta = Math.atan2(-dx, dy);
+
+			if (Double.compare(theta, SegmentMerger.maxTheta) >= 0)
+				theta -= Math.PI;
+			else if (Double.compare(theta, SegmentMerger.minTheta) < 0)
+				theta += Math.PI;
+
+			double mx = 0.5 * (segment.x1 + segment.x2) - origin.x;
+			double my = 0.5 * (segment.y1 + segment.y2) - origin.y;
+
+			thetas[i]   = theta;
+			rhos[i]      = mx * Math.cos(theta) + my * Math.sin(theta);
+			distances[i] = Math.sqrt(mx*mx + my*my);
+			lengths2[i]  = dx*dx + dy*dy;
+		}
+
+		// Order the segments by decreasing length (then by position)
+		int[] lengthsRanks = SegmentMerger.getRanks(lengths2);
+		long[] keys = new long[size];
+
+		for (int i = 0; i < size; i++)
+			keys[i] = (long)(size - 1 - lengthsRanks[i]) * size + i;
+
+		Arrays.sort(keys);
+
+		// Group collinear lines: each segment joins the closest group whose line (the line of its
+		// longest segment) is within tolerances, or starts a new group, so that groups do not chain
+		double thetaTolerance = this.angularSensitivity * Math.PI/180.0;
+		double   rhoTolerance = this.thicknessSensitivity;
+		GridIndex grid = new GridIndex(thetas, rhos, size, thetaTolerance, rhoTolerance);
+		int[] labels = new int[size];
+		int[] longest = new int[size];
+		Arrays.fill(labels, -1);
+
+		for (int k = 0; k < size; k++) {
+			int j = (int)(keys[k] % size);
+			labels[j] = this.findClosestGroup(grid, segments, thetas, rhos, distances, labels, longest, j);
+
+			if (labels[j] < 0) {
+				labels[j] = this.numberOfGroups;
+				longest[this.numberOfGroups] = j;
+				this.numberOfGroups++;
+			}
+		}
+
+		// Intervals of segments on the direction of the longest segment of their group
+		double[] starts = new double[size];
+		double[]   ends = new double[size];
+		boolean[] reversed = new boolean[size];
+
+		for (int i = 0; i < size; i++) {
+			Line segment = segments.get(i);
+			double theta = thetas[longest[labels[i]]];
+			double    dx = -Math.sin(theta);
+			double    dy = Math.cos(theta);
+
+			double t1 = segment.x1 * dx + segment.y1 * dy;
+			double t2 = segment.x2 * dx + segment.y2 * dy;
+
+			reversed[i] = Double.compare(t2, t1) < 0;
+			starts[i]   = Math.min(t1, t2);
+			ends[i]     = Math.max(t1, t2);
+		}
+
+		// Sort the intervals by group (counting sort), then by start (sorted keys of ranks and positions)
+		int[] startsRanks = SegmentMerger.getRanks(starts);
+		int[] groupsStarts = new int[this.numberOfGroups + 1];
+
+		for (int i = 0; i < size; i++)
+			groupsStarts[labels[i] + 1]++;
+
+		for (int g = 0; g < this.numberOfGroups; g++)
+			groupsStarts[g + 1] += groupsStarts[g];
+
+		int[] next = Arrays.copyOf(groupsStarts, this.numberOfGroups);
+
+		for (int i = 0; i < size; i++)
+			keys[next[labels[i]]++] = (long)startsRanks[i] * size + i;
+
+		int[] order = new int[size];
+
+		for (int g = 0; g < this.numberOfGroups; g++) {
+			Arrays.sort(keys, groupsStarts[g], groupsStarts[g + 1]);
+
+			for (int k = groupsStarts[g]; k < groupsStarts[g + 1]; k++)
+				order[k] = (int)(keys[k] % size);
+		}
+
+		// Sweep the sorted intervals and join them when they overlap or are close enough
+		int first = order[0], last = order[0], numberOfJoinedSegments = 1;
+		double end = ends[first];
+		int[] sources = new int[size];
+
+		for (int k = 1; k <= size; k++) {
+			int current = (k < size) ? order[k] : -1;
+
+			if (current >= 0 && labels[current] == labels[first] && Double.compare(starts[current], end + this.maxGap) <= 0) {
+				numberOfJoinedSegments++;
+
+				if (Double.compare(ends[current], end) > 0) {
+					end  = ends[current];
+					last = current;
+				}
+			}
+			else {
+				Line firstSegment = segments.get(first), lastSegment = segments.get(last);
+
+				int x1 = reversed[first] ? firstSegment.x2 : firstSegment.x1;
+				int y1 = reversed[first] ? firstSegment.y2 : firstSegment.y1;
+				int x2 = reversed[last]  ? lastSegment.x1  : lastSegment.x2;
+				int y2 = reversed[last]  ? lastSegment.y1  : lastSegment.y2;
+
+				sources[mergedSegments.size()] = (numberOfJoinedSegments == 1) ? first : -1;
+				mergedSegments.add(new Line(x1, y1, x2, y2));
+
+				if (current >= 0) {
+					first = last = current;
+					end = ends[current];
+					numberOfJoinedSegments = 1;
+				}
+			}
+		}
+
+		this.sources = Arrays.copyOf(sources, mergedSegments.size());
+
+		return mergedSegments;
+	}
+
+	/**
+	 * Find the closest group whose line is collinear to a segment.
+	 *
+	 * The groups of the lines close to the line of the segment in Hough space
+	 * (on both sides of the angular range) are candidates. A group is
+	 * collinear when the angle between the segment and its line is lower than
+	 * the angular sensitivity and the endpoints of the segment are within the
+	 * thickness sensitivity of its line.
+	 *
+	 * Two lines through the same point at a distance d of the origin, with an
+	 * angle a between them, are up to d.a apart on the second axis of Hough
+	 * space. The range of the query on this axis is thus the thickness
+	 * sensitivity widened by the distance of the middle of the segment to the
+	 * origin times the angular sensitivity, so that collinear segments far
+	 * from the origin are found.
+	 *
+	 * @param grid Spatial index of lines.
+	 * @param segments Input segments.
+	 * @param thetas Lines coordinates on first axis.
+	 * @param rhos Lines coordinates on second axis.
+	 * @param distances Distances of the middles of segments to the origin.
+	 * @param labels Groups of segments (negative when not grouped yet).
+	 * @param longest Longest segment of each group (the line of the group).
+	 * @param j Position of the segment.
+	 * @return The label of the closest collinear group, or -1 if there is none.
+	 */
+	private int findClosestGroup(GridIndex grid, List<Line> segments, double[] thetas, double[] rhos, double[] distances, int[] labels, int[] longest, int j) {
+		double thetaTolerance = this.angularSensitivity * Math.PI/180.0;
+		double rhoRange = this.thicknessSensitivity + distances[j] * thetaTolerance;
+		Line segment = segments.get(j);
+
+		int closestGroup = -1;
+		double minDistance = Double.POSITIVE_INFINITY;
+
+		// Query the line and its images on the other side of the angular range
+		for (int side = -1; side <= 1; side++) {
+			double theta = thetas[j] + side * Math.PI;
+			double   rho = (side == 0) ? rhos[j] : -rhos[j];
+
+			if ((side > 0 && Double.compare(thetas[j] - thetaTolerance, SegmentMerger.minTheta) >= 0) ||
+				(side < 0 && Double.compare(thetas[j] + thetaTolerance, SegmentMerger.maxTheta) < 0))
+				continue;
+
+			int column = grid.getColumn(theta);
+
+			for (int r = grid.getRow(rho - rhoRange); r <= grid.getRow(rho + rhoRange); r++) {
+				for (int c = Math.max(column-1, 0); c <= Math.min(column+1, grid.getColumns()-1); c++) {
+					for (int k = grid.getCellStart(c, r); k < grid.getCellEnd(c, r); k++) {
+						int label = labels[grid.getIndex(k)];
+
+						if (label < 0 || label == closestGroup)
+							continue;
+
+						// Angle between the segment and the line of the group
+						double angle = Math.abs(thetas[j] - thetas[longest[label]]);
+						angle = Math.min(angle, Math.PI - angle);
+
+						if (Double.compare(angle, thetaTolerance) > 0)
+							continue;
+
+						// Distances of the endpoints of the segment to the line of the group
+						Line line = segments.get(longest[label]);
+						double dx = line.x2 - line.x1, dy = line.y2 - line.y1;
+						double norm = Math.sqrt(dx*dx + dy*dy);
+						double d1 = Math.abs((segment.x1 - line.x1) * dy - (segment.y1 - line.y1) * dx) / norm;
+						double d2 = Math.abs((segment.x2 - line.x1) * dy - (segment.y2 - line.y1) * dx) / norm;
+						double distance = Math.max(d1, d2);
+
+						if (Double.compare(distance, this.thicknessSensitivity) <= 0 && (Double.compare(distance, minDistance) < 0 ||
+								(Double.compare(distance, minDistance) == 0 && label < closestGroup))) {
+							minDistance  = distance;
+							closestGroup = label;
+						}
+					}
+				}
+			}
+		}
+
+		return closestGroup;
+	}
+
+	/**
+	 * Compute the ranks of values (equal values have the same rank).
+	 * @param values Input values.
+	 * @return The rank of each value in sorted values.
+	 */
+	private static int[] getRanks(double[] values) {
+		double[] sortedValues = Arrays.copyOf(values, values.length);
+		Arrays.sort(sortedValues);
+
+		int[] ranks = new int[values.length];
+
+		for (int i = 0; i < values.length; i++)
+			ranks[i] = Arrays.binarySearch(sortedValues, values[i]);
+
+		return ranks;
+	}
+
+	/**
+	 * Set the maximal gap allowed between two merged segments.
+	 * @param maxGap Maximal gap (in pixels).
+	 */
+	public void setMaxGap(double maxGap) {
+		this.maxGap = maxGap;
+	}
+
+	/**
+	 * Get the maximal gap allowed between two merged segments.
+	 * @return The maximal gap (in pixels).
+	 */
+	public double getMaxGap() {
+		return this.maxGap;
+	}
+
+	/**
+	 * Get the input segment of each merged segment found during last run.
+	 *
+	 * A merged segment made of a single input segment has the same endpoints
+	 * (possibly in reverse order), so that it can be kept where it is already
+	 * displayed.
+	 *
+	 * @return The position of the input segment of each merged segment, or -1 when it joins several segments.
+	 */
+	public int[] getSources() {
+		return this.sources;
+	}
+
+	/**
+	 * Get the number of groups of collinear segments found during last run.
+	 * @return The number of groups (each gives at least one segment).
+	 */
+	public int getNumberOfGroups() {
+		return this.numberOfGroups;
+	}
+}
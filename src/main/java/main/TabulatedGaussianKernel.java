@@ -0,0 +1,70 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package main;
+
+/**
+ * Gaussian kernel approximated by linear interpolation in a table.
+ * 
+ * The Gaussian profile is sampled once over [0, maxDomain]. Since its
+ * second derivative is bounded by 1/4, the interpolation error is bounded
+ * by step^2/32, i.e. less than 1e-6 with the default number of samples.
+ * 
+ * @author julien.pontabry
+ */
+public class TabulatedGaussianKernel implements Kernel {
+	/** Default number of samples in the table. */
+	public static final int defaultNumberOfSamples = 1024;
+	
+	/** Samples of the Gaussian profile (with one more sample at the end for interpolation). */
+	protected final double[] table;
+	
+	/** Inverse of sampling step. */
+	protected final double scale;
+	
+	/**
+	 * Default constructor.
+	 */
+	public TabulatedGaussianKernel() {
+		this(TabulatedGaussianKernel.defaultNumberOfSamples);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param numberOfSamples Number of samples in the table.
+	 */
+	public TabulatedGaussianKernel(int numberOfSamples) {
+		this.table = new double[numberOfSamples + 2];
+		this.scale = numberOfSamples / MeanShift.maxDomain;
+		
+		for (int i = 0; i < this.table.length; i++)
+			this.table[i] = Math.exp(-0.5 * i / this.scale);
+	}
+	
+	/**
+	 * @see main.Kernel#weight(double)
+	 */
+	@Override
+	public double weight(double u2) {
+		double position = u2 * this.scale;
+		int i = (int)position;
+		double t = position - i;
+		
+		return this.table[i] + t * (this.table[i+1] - this.table[i]);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import coordinates.HoughSpace;
+import coordinates.LineEstimator;
+import ij.IJ;
+import ij.ImagePlus;
+import main.AdaptiveHoughSampling;
+import main.DetectionOptions;
+import main.ExecutionContext;
+import main.Extract_DNA_Fibers;
+import main.HoughEngine;
+import main.LocalModelSampler;
+
+/**
+ * Test class for adaptive sampling of Hough space.
+ * @author julien.pontabry
+ */
+public class AdaptiveHoughSamplingTest {
+	/**
+	 * Test method for {@link AdaptiveHoughSampling#runWith(LocalModelSampler, long)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWith() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		HoughSpace expected, actual;
+		int numberOfSamples;
+		
+		try (ExecutionContext context = new ExecutionContext(1)) {
+			LocalModelSampler sampler = new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor());
+			AdaptiveHoughSampling sampling = new AdaptiveHoughSampling(0.33, 2.5, 5);
+			sampling.setBatchSize(1000);
+			sampling.setExecutor(context.getExecutor());
+			expected = sampling.runWith(sampler, 42);
+			numberOfSamples = sampling.getNumberOfSamples();
+			
+			// Stable selection before the maximal number of samples, which is the selection of all samples
+			assertTrue(sampling.hasConverged());
+			assertTrue(sampling.getNumberOfBatches() >= 2);
+			assertTrue(numberOfSamples > 1000 && numberOfSamples < sampling.getMaxSamples());
+			assertTrue(sampling.getHoughPoints().size <= numberOfSamples);
+			assertEquals(expected.toList(), Extract_DNA_Fibers.selectHoughPoints(sampling.getHoughPoints(), 0.33, 2.5, 5, Extract_DNA_FibersTest.getOptions(context.getExecutor())).toList());
+		}
+		
+		// Same seed gives same selection, whatever the number of threads
+		try (ExecutionContext context = new ExecutionContext(4)) {
+			LocalModelSampler sampler = new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor());
+			AdaptiveHoughSampling sampling = new AdaptiveHoughSampling(0.33, 2.5, 5);
+			sampling.setBatchSize(1000);
+			sampling.setExecutor(context.getExecutor());
+			actual = sampling.runWith(sampler, 42);
+			
+			assertEquals(numberOfSamples, sampling.getNumberOfSamples());
+			assertEquals(expected.toList(), actual.toList());
+		}
+	}
+	
+	/**
+	 * Test method for {@link AdaptiveHoughSampling#setMaxSamples(int)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithMaxSamples() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		AdaptiveHoughSampling sampling = new AdaptiveHoughSampling(0.33, 2.5, 5);
+		sampling.setBatchSize(1000);
+		sampling.setMaxSamples(1500);
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			sampling.runWith(new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor()), 42);
+		}
+		
+		assertEquals(1500, sampling.getNumberOfSamples());
+		assertEquals(2, sampling.getNumberOfBatches());
+	}
+	
+	/**
+	 * Test that a first batch larger than the maximal number of samples is rejected.
+	 * @throws Exception
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testRunWithLargeBatch() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		AdaptiveHoughSampling sampling = new AdaptiveHoughSampling(0.33, 2.5, 5);
+		sampling.setBatchSize(2000);
+		sampling.setMaxSamples(1500);
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			sampling.runWith(new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor()), 42);
+		}
+	}
+	
+	/**
+	 * Test method for {@link AdaptiveHoughSampling#setEngine(HoughEngine)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithKernelDensity() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		AdaptiveHoughSampling sampling = new AdaptiveHoughSampling(0.33, 2.5, 5);
+		sampling.setBatchSize(1000);
+		sampling.setEngine(HoughEngine.KERNEL_DENSITY);
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			HoughSpace selectedPoints = sampling.runWith(new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor()), 42);
+			DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+			options.setEngine(HoughEngine.KERNEL_DENSITY);
+			
+			assertFalse(selectedPoints.isEmpty());
+			assertEquals(selectedPoints.toList(), Extract_DNA_Fibers.selectHoughPoints(sampling.getHoughPoints(), 0.33, 2.5, 5, options).toList());
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import coordinates.AngleTable;
+
+/**
+ * Test class for the lookup table of local model angles.
+ * @author julien.pontabry
+ */
+public class AngleTableTest {
+	/**
+	 * Test method for {@link AngleTable#AngleTable(int)}.
+	 */
+	@Test
+	public void testAngleTable() {
+		AngleTable table = new AngleTable(3);
+		
+		assertEquals(3, table.getHalfSize());
+		assertTrue(table.contains(-3, 3));
+		assertFalse(table.contains(4, 0));
+		assertFalse(table.contains(0, -4));
+		
+		for (int b = -3; b <= 3; b++) {
+			for (int a = -3; a <= 3; a++) {
+				int index = table.getIndex(a, b);
+				double theta = (a == 0) ? 0.0 : (b == 0) ? -Math.PI/2.0 : -Math.atan((double)a/(double)b);
+				
+				assertEquals(theta, table.theta[index], 1e-15);
+				assertEquals(Math.sin(2.0*theta + Math.PI), table.alphaSin[index], 1e-15);
+				assertEquals(Math.cos(2.0*theta + Math.PI), table.alphaCos[index], 1e-15);
+			}
+		}
+	}
+}
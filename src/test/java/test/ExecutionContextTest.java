@@ -0,0 +1,88 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import main.ExecutionContext;
+import main.Extract_DNA_Fibers;
+
+/**
+ * Test class for the execution context shared by stages.
+ * @author julien.pontabry
+ */
+public class ExecutionContextTest {
+	/**
+	 * Test method for {@link ExecutionContext#ExecutionContext(int)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testExecutionContextWithoutThreads() {
+		new ExecutionContext(0);
+	}
+	
+	/**
+	 * Test method for {@link ExecutionContext#getParallelism(ExecutorService)}.
+	 */
+	@Test
+	public void testGetParallelism() {
+		for (int threads : new int[] { 1, 3 }) {
+			try (ExecutionContext context = new ExecutionContext(threads)) {
+				assertEquals(context.getThreads(), ExecutionContext.getParallelism(context.getExecutor()));
+			}
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		assertEquals(2, ExecutionContext.getParallelism(executor));
+		executor.shutdown();
+	}
+	
+	/**
+	 * Test method for {@link ExecutionContext#close()}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testClose() throws Exception {
+		List<HoughPoint> points = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"hough_points_lowsample.csv", ",");
+		List<HoughPoint> expectedPoints = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"selected_points.csv", ",");
+		ExecutorService executor;
+		
+		try (ExecutionContext context = new ExecutionContext(2)) {
+			assertEquals(2, context.getThreads());
+			executor = context.getExecutor();
+			
+			// The executor is shared by successive stages and is not shut down by them
+			for (int i = 0; i < 2; i++) {
+				List<HoughPoint> selectedPoints = Extract_DNA_Fibers.selectHoughPoints(new HoughSpace(points), 0.33, 2.5, 5, Extract_DNA_FibersTest.getOptions(executor)).toList();
+				
+				assertEquals(expectedPoints.size(), selectedPoints.size());
+				assertFalse(executor.isShutdown());
+			}
+		}
+		
+		assertTrue(executor.isTerminated());
+	}
+}
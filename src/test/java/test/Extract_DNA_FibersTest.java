@@ -22,6 +22,7 @@ import static org.junit.Assert.*;
 
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
 
 import org.junit.Before;
 import org.junit.Ignore;
@@ -37,7 +38,11 @@ import ij.process.ImageProcessor;
 
 import coordinates.*;
 
+import main.DetectionOptions;
+import main.ExecutionContext;
 import main.Extract_DNA_Fibers;
+import main.HoughEngine;
+import main.SegmentBuilder;
 
 
 
@@ -226,6 +231,269 @@ public class Extract_DNA_FibersTest {
 		assertTrue("Hausdorff distance test failed (expected below <"+minHausdorffDistance+">, actual <"+hausdorffDistance+">).", minHausdorffDistance > hausdorffDistance);
 	}
 	
+	/**
+	 * Test that random sampling of Hough space is reproducible with a seed.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBuildHoughSpaceWithSeed() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		List<HoughPoint> expected, actual, other;
+		
+		try (ExecutionContext context = new ExecutionContext(1)) {
+			DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+			options.setSeed(7);
+			expected = Extract_DNA_Fibers.buildHoughSpace(skeletons, skeletons.getRoi(), 1000, 25, options).toList();
+		}
+		
+		// Same seed gives same points, whatever the number of threads
+		try (ExecutionContext context = new ExecutionContext(4)) {
+			DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+			options.setSeed(7);
+			actual = Extract_DNA_Fibers.buildHoughSpace(skeletons, skeletons.getRoi(), 1000, 25, options).toList();
+			options.setSeed(8);
+			other = Extract_DNA_Fibers.buildHoughSpace(skeletons, skeletons.getRoi(), 1000, 25, options).toList();
+		}
+		
+		assertEquals(expected, actual);
+		assertFalse(expected.equals(other));
+	}
+	
+	/**
+	 * Test that no point is selected when mean-shift fails (the executor is shut down).
+	 */
+	@Test
+	public void testSelectHoughPointsWhenModesFindingFails() {
+		HoughSpace houghPoints = new HoughSpace();
+		
+		for (int i = 0; i < 100; i++)
+			houghPoints.add(0.01 * (i % 10), i / 10);
+		
+		ExecutionContext context = new ExecutionContext();
+		context.close();
+		
+		HoughSpace selectedPoints = Extract_DNA_Fibers.selectHoughPoints(houghPoints, 0.33, 2.5, 5, Extract_DNA_FibersTest.getOptions(context.getExecutor()));
+		assertTrue(selectedPoints.isEmpty());
+	}
+	
+	/**
+	 * Test that the accumulator engine selects the points of mean-shift on the local models of all skeleton pixels.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSelectHoughPointsWithAccumulator() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+			HoughSpace houghPoints = Extract_DNA_Fibers.buildHoughSpace(Extract_DNA_Fibers.buildOrientationField(skeletons, skeletons.getRoi(), 25, options));
+			List<HoughPoint> expected = Extract_DNA_Fibers.selectHoughPoints(houghPoints, 0.33, 2.5, 5, options).toList();
+			options.setEngine(HoughEngine.ACCUMULATOR);
+			List<HoughPoint>   actual = Extract_DNA_Fibers.selectHoughPoints(houghPoints, 0.33, 2.5, 5, options).toList();
+			
+			// Counts are the votes within sensitivities instead of the basins of
+			// attraction, so weak modes close to the selection threshold may differ
+			assertTrue(actual.size() >= expected.size()-1 && actual.size() <= expected.size());
+			
+			for (HoughPoint p : actual) {
+				boolean found = false;
+				
+				for (HoughPoint q : expected)
+					found |= Math.abs(p.theta - q.theta) < 1.0*Math.PI/180.0 && Math.abs(p.rho - q.rho) < 2.0;
+				
+				assertTrue("No mode close to "+p, found);
+			}
+		}
+	}
+	
+	/**
+	 * Test that the kernel density engine selects the same points as mean-shift on the local models of all skeleton pixels.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSelectHoughPointsWithKernelDensity() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+			HoughSpace houghPoints = Extract_DNA_Fibers.buildHoughSpace(Extract_DNA_Fibers.buildOrientationField(skeletons, skeletons.getRoi(), 25, options));
+			List<HoughPoint> expected = Extract_DNA_Fibers.selectHoughPoints(houghPoints, 0.33, 2.5, 5, options).toList();
+			options.setEngine(HoughEngine.KERNEL_DENSITY);
+			List<HoughPoint>   actual = Extract_DNA_Fibers.selectHoughPoints(houghPoints, 0.33, 2.5, 5, options).toList();
+			
+			assertEquals(expected.size(), actual.size());
+			
+			for (HoughPoint p : actual) {
+				boolean found = false;
+				
+				for (HoughPoint q : expected)
+					found |= Math.abs(p.theta - q.theta) < 0.5*Math.PI/180.0 && Math.abs(p.rho - q.rho) < 1.0;
+				
+				assertTrue("No mode close to "+p, found);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link Extract_DNA_Fibers#selectLinePoints(boolean[], ImagePoint, int, int, HoughPoint, double)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSelectLinePoints() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		ImagePoint origin = ImagePoint.getCenterPointOfImage(skeletons);
+		int width = skeletons.getWidth(), height = skeletons.getHeight();
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			ImagePointArray foregroundPoints = ImagePoint.getImageForegroundPointArray(skeletons, skeletons.getRoi(), origin, context.getExecutor());
+			boolean[] bitmap = Extract_DNA_Fibers.getBitmap(foregroundPoints, origin, width, height);
+			
+			// Lines through foreground points, and lines along the axes
+			List<HoughPoint> lines = new Vector<HoughPoint>();
+			lines.add(new HoughPoint(0.0, 10.0));
+			lines.add(new HoughPoint(-Math.PI/2.0, -40.0));
+			
+			for (int i = 0; i < foregroundPoints.size; i += 53) {
+				double theta = Math.PI * ((i * 0.618034) % 1.0) - Math.PI/2.0;
+				lines.add(new HoughPoint(theta, foregroundPoints.x[i] * Math.cos(theta) + foregroundPoints.y[i] * Math.sin(theta)));
+			}
+			
+			for (HoughPoint line : lines) {
+				for (double tolerance : new double[] { 0.5, 1.0, 3.0 }) {
+					// The band contains the same points (in the same order) than the scan of all points
+					ImagePointArray expected = new ImagePointArray();
+					double cosTheta = Math.cos(line.theta), sinTheta = Math.sin(line.theta);
+					
+					for (int i = 0; i < foregroundPoints.size; i++) {
+						double rho = foregroundPoints.x[i] * cosTheta + foregroundPoints.y[i] * sinTheta;
+						
+						if (line.rho-tolerance <= rho && rho <= line.rho+tolerance)
+							expected.add(foregroundPoints.x[i], foregroundPoints.y[i]);
+					}
+					
+					ImagePointArray actual = Extract_DNA_Fibers.selectLinePoints(bitmap, origin, width, height, line, tolerance);
+					
+					assertEquals(expected.size, actual.size);
+					
+					for (int i = 0; i < expected.size; i++) {
+						assertEquals(expected.x[i], actual.x[i]);
+						assertEquals(expected.y[i], actual.y[i]);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link Extract_DNA_Fibers#selectLinePoints(ImagePointArray, ImagePoint, int, int, List, double, java.util.concurrent.ExecutorService)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSelectLinePointsInSinglePass() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		ImagePoint origin = ImagePoint.getCenterPointOfImage(skeletons);
+		int width = skeletons.getWidth(), height = skeletons.getHeight();
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			ImagePointArray foregroundPoints = ImagePoint.getImageForegroundPointArray(skeletons, skeletons.getRoi(), origin, context.getExecutor());
+			boolean[] bitmap = Extract_DNA_Fibers.getBitmap(foregroundPoints, origin, width, height);
+			
+			// Many lines through foreground points, and lines along the axes
+			List<HoughPoint> lines = new Vector<HoughPoint>();
+			lines.add(new HoughPoint(0.0, 10.0));
+			lines.add(new HoughPoint(-Math.PI/2.0, -40.0));
+			
+			for (int i = 0; i < foregroundPoints.size; i += 11) {
+				double theta = Math.PI * ((i * 0.618034) % 1.0) - Math.PI/2.0;
+				lines.add(new HoughPoint(theta, foregroundPoints.x[i] * Math.cos(theta) + foregroundPoints.y[i] * Math.sin(theta)));
+			}
+			
+			// Same points (in the same order) than the band of each line
+			List<ImagePointArray> actual = Extract_DNA_Fibers.selectLinePoints(foregroundPoints, origin, width, height, lines, 1.0, context.getExecutor());
+			assertEquals(lines.size(), actual.size());
+			
+			for (int k = 0; k < lines.size(); k++) {
+				ImagePointArray expected = Extract_DNA_Fibers.selectLinePoints(bitmap, origin, width, height, lines.get(k), 1.0);
+				assertEquals(expected.size, actual.get(k).size);
+				
+				for (int i = 0; i < expected.size; i++) {
+					assertEquals(expected.x[i], actual.get(k).x[i]);
+					assertEquals(expected.y[i], actual.get(k).y[i]);
+				}
+			}
+			
+			// Same segments
+			DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+			List<Line> expectedSegments = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), lines, 30, 50, 1.0, options);
+			options.setBuilder(SegmentBuilder.SINGLE_PASS);
+			List<Line>   actualSegments = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), lines, 30, 50, 1.0, options);
+			assertEquals(expectedSegments.size(), actualSegments.size());
+			
+			for (Line segment : expectedSegments)
+				assertTrue("Expected to find <"+segment+"> in list", Extract_DNA_FibersTest.containsLineRoi(segment, actualSegments));
+		}
+	}
+	
+	/**
+	 * Test method for {@link Extract_DNA_Fibers#buildOrientationField(ImagePlus, ij.gui.Roi, int, DetectionOptions)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBuildOrientationField() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		ImagePoint origin = ImagePoint.getCenterPointOfImage(skeletons);
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			ImagePointArray foregroundPoints = ImagePoint.getImageForegroundPointArray(skeletons, skeletons.getRoi(), origin, context.getExecutor());
+			HoughSpace field = Extract_DNA_Fibers.buildOrientationField(skeletons, skeletons.getRoi(), 25, Extract_DNA_FibersTest.getOptions(context.getExecutor()));
+			
+			// One local model per foreground point, the same as the direct estimation
+			assertEquals(foregroundPoints.size, field.size);
+			
+			for (int i = 0; i < foregroundPoints.size; i += 97) {
+				List<ImagePoint> neighborhood = new Vector<>();
+				ImagePoint p0 = foregroundPoints.get(i);
+				
+				for (int j = 0; j < foregroundPoints.size; j++) {
+					ImagePoint p = foregroundPoints.get(j);
+					
+					if (!p.equals(p0) && p.squaredDistanceToPoint(p0) < 25*25)
+						neighborhood.add(p);
+				}
+				
+				if (neighborhood.isEmpty())
+					assertTrue(Double.isNaN(field.theta[i]));
+				else {
+					HoughPoint expected = p0.estimatedHoughPoint(neighborhood);
+					assertEquals(expected.theta, field.theta[i], 1e-10);
+					assertEquals(expected.rho, field.rho[i], 1e-10);
+				}
+			}
+			
+			// The Hough space of all pixels is deterministic
+			HoughSpace points = Extract_DNA_Fibers.buildHoughSpace(field);
+			assertEquals(points.toList(), Extract_DNA_Fibers.buildHoughSpace(Extract_DNA_Fibers.buildOrientationField(skeletons, skeletons.getRoi(), 25, Extract_DNA_FibersTest.getOptions(context.getExecutor()))).toList());
+			
+			// Sampling is a lookup in the field
+			HoughSpace samples = Extract_DNA_Fibers.sampleOrientationField(field, 3000, 0);
+			assertTrue(samples.size > 0 && samples.size <= 3000);
+			
+			for (int i = 0; i < samples.size; i += 101)
+				assertTrue(Extract_DNA_FibersTest.containsPoint(samples.get(i), points.toList()));
+			
+			// Comparable to the Hough space from random samples
+			double hausdorffDistance = Extract_DNA_FibersTest.computeHausdorffDistance(CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"hough_points.csv", ","), samples.toList());
+			assertTrue("Hausdorff distance test failed (actual <"+hausdorffDistance+">).", hausdorffDistance < 40);
+		}
+	}
+	
 	/**
 	 * Test method for {@link Extract_DNA_Fibers#replicateHoughSpaceBorders(java.util.List<coordinates.HoughPoint>, double}
 	 */
@@ -363,6 +631,18 @@ public class Extract_DNA_FibersTest {
 //		manager.runCommand("Save", Extract_DNA_FibersTest.testpath+"lines.zip");
 	}
 	
+	/**
+	 * Get the default options of detection with an executor.
+	 * @param executor Executor running the parallel tasks.
+	 * @return The options of detection.
+	 */
+	public static DetectionOptions getOptions(ExecutorService executor) {
+		DetectionOptions options = new DetectionOptions();
+		options.setExecutor(executor);
+		
+		return options;
+	}
+	
 	/**
 	 * Test if a list contains a specific line ROI.
 	 * @param pexp Expected line ROI.
@@ -484,4 +764,118 @@ public class Extract_DNA_FibersTest {
 		lexp = new Line(564, 498, 481, 115);
 		assertTrue("Expected to find <"+lexp+"> in list", Extract_DNA_FibersTest.containsLineRoi(lexp, segments));
 	}
+	
+	/**
+	 * Test method for {@link Extract_DNA_Fibers#buildSegments(ImagePointArray, HoughPoint, ImagePoint, double, double)}
+	 * @throws Exception 
+	 */
+	@Test
+	public void testBuildSegmentsWithProjectedGaps() throws Exception {
+		// Two runs along a horizontal line, separated by a gap
+		ImagePointArray points = new ImagePointArray(80);
+		
+		for (int x = 99; x >= 60; x--)
+			points.add(x, 5);
+		
+		for (int x = 0; x < 40; x++)
+			points.add(x, 5);
+		
+		List<Line> segments = Extract_DNA_Fibers.buildSegments(points, new HoughPoint(-Math.PI/2.0, -5.0), new ImagePoint(0, 0), 10, 30);
+		assertEquals(2, segments.size());
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(0, 5, 39, 5), segments));
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(60, 5, 99, 5), segments));
+		
+		// Gap smaller than the maximal gap
+		segments = Extract_DNA_Fibers.buildSegments(points, new HoughPoint(-Math.PI/2.0, -5.0), new ImagePoint(0, 0), 25, 30);
+		assertEquals(1, segments.size());
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(0, 5, 99, 5), segments));
+		
+		// Segments shorter than the minimal length
+		segments = Extract_DNA_Fibers.buildSegments(points, new HoughPoint(-Math.PI/2.0, -5.0), new ImagePoint(0, 0), 10, 50);
+		assertTrue(segments.isEmpty());
+		
+		// Close to the segments found by sorting the points
+		ImagePlus             skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		List<HoughPoint> selectedPoints = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"selected_points.csv", ",");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+			List<Line> expectedSegments = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), selectedPoints, 50, 30, 2.0, options);
+			options.setProjectedGaps(true);
+			List<Line>   actualSegments = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), selectedPoints, 50, 30, 2.0, options);
+			assertEquals(expectedSegments.size(), actualSegments.size());
+			
+			for (Line segment : expectedSegments)
+				assertTrue("Expected to find <"+segment+"> in list", Extract_DNA_FibersTest.containsCloseLineRoi(segment, actualSegments, 3));
+		}
+	}
+	
+	/**
+	 * Test method for {@link Extract_DNA_Fibers#buildSegments(ImagePlus, ij.gui.Roi, List, double, double, double, DetectionOptions)}
+	 * @throws Exception 
+	 */
+	@Test
+	public void testBuildSegmentsWithListener() throws Exception {
+		ImagePlus             skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		List<HoughPoint> selectedPoints = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"selected_points.csv", ",");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		for (SegmentBuilder builder : SegmentBuilder.values()) {
+			try (ExecutionContext context = new ExecutionContext()) {
+				List<HoughPoint> deliveredLines = new Vector<HoughPoint>();
+				List<Line>    deliveredSegments = new Vector<Line>();
+				
+				DetectionOptions options = Extract_DNA_FibersTest.getOptions(context.getExecutor());
+				options.setBuilder(builder);
+				options.setListener((line, lineSegments) -> {
+					deliveredLines.add(line);
+					deliveredSegments.addAll(lineSegments);
+				});
+				List<Line> segments = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), selectedPoints, 50, 30, 2.0, options);
+				
+				// Same segments as without listener (in order of selected points)
+				options.setListener(null);
+				List<Line> expectedSegments = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), selectedPoints, 50, 30, 2.0, options);
+				assertEquals(expectedSegments.size(), segments.size());
+				
+				for (int i = 0; i < segments.size(); i++) {
+					assertEquals(expectedSegments.get(i).x1, segments.get(i).x1);
+					assertEquals(expectedSegments.get(i).y1, segments.get(i).y1);
+					assertEquals(expectedSegments.get(i).x2, segments.get(i).x2);
+					assertEquals(expectedSegments.get(i).y2, segments.get(i).y2);
+				}
+				
+				// Each selected point is delivered once, with all its segments
+				assertEquals(selectedPoints.size(), deliveredLines.size());
+				
+				for (HoughPoint p : selectedPoints)
+					assertTrue(deliveredLines.contains(p));
+				
+				assertEquals(segments.size(), deliveredSegments.size());
+				
+				for (Line segment : segments)
+					assertTrue("Expected to find <"+segment+"> in list", Extract_DNA_FibersTest.containsLineRoi(segment, deliveredSegments));
+			}
+		}
+	}
+	
+	/**
+	 * Check if a line is close to a line of a list (in any orientation).
+	 * @param lexp Line to search for.
+	 * @param list List of lines.
+	 * @param tolerance Maximal distance between endpoints (in pixels).
+	 * @return True if a line of the list has both endpoints close to the endpoints of the line.
+	 */
+	public static boolean containsCloseLineRoi(Line lexp, List<Line> list, int tolerance) {
+		for (Line l : list) {
+			if (Math.abs(l.x1 - lexp.x1) <= tolerance && Math.abs(l.y1 - lexp.y1) <= tolerance && Math.abs(l.x2 - lexp.x2) <= tolerance && Math.abs(l.y2 - lexp.y2) <= tolerance)
+				return true;
+			
+			if (Math.abs(l.x1 - lexp.x2) <= tolerance && Math.abs(l.y1 - lexp.y2) <= tolerance && Math.abs(l.x2 - lexp.x1) <= tolerance && Math.abs(l.y2 - lexp.y1) <= tolerance)
+				return true;
+		}
+		
+		return false;
+	}
 }
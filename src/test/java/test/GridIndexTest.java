@@ -0,0 +1,108 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import coordinates.GridIndex;
+import coordinates.ImagePointArray;
+
+/**
+ * Test class for the uniform grid index.
+ * @author julien.pontabry
+ */
+public class GridIndexTest {
+	/**
+	 * Test that every point is indexed exactly once.
+	 */
+	@Test
+	public void testIndexing() {
+		ImagePointArray points = new ImagePointArray();
+		points.add(-3, 2); points.add(10, 10); points.add(0, 0);
+		points.add(-3, 2); points.add(7, -8);
+		
+		GridIndex grid = new GridIndex(points, 4);
+		int[] occurrences = new int[points.size()];
+		
+		for (int r = 0; r < grid.getRows(); r++) {
+			for (int c = 0; c < grid.getColumns(); c++) {
+				for (int k = grid.getCellStart(c, r); k < grid.getCellEnd(c, r); k++) {
+					int i = grid.getIndex(k);
+					occurrences[i]++;
+					assertEquals(c, grid.getColumn(points.x[i]));
+					assertEquals(r, grid.getRow(points.y[i]));
+				}
+			}
+		}
+		
+		for (int count : occurrences)
+			assertEquals(1, count);
+		
+		// Empty set of points
+		grid = new GridIndex(new ImagePointArray(), 4);
+		assertEquals(0, grid.getCellEnd(0, 0) - grid.getCellStart(0, 0));
+	}
+	
+	/**
+	 * Test that the 3x3 surrounding cells contain all neighbors (compared to exhaustive search).
+	 */
+	@Test
+	public void testNeighborhood() {
+		Random random = new Random(0);
+		ImagePointArray points = new ImagePointArray();
+		
+		for (int i = 0; i < 2000; i++)
+			points.add(random.nextInt(400) - 200, random.nextInt(300) - 150);
+		
+		int radius = 25;
+		GridIndex grid = new GridIndex(points, radius);
+		
+		for (int i = 0; i < points.size(); i += 37) {
+			int expected = 0;
+			
+			for (int j = 0; j < points.size(); j++) {
+				int dx = points.x[j] - points.x[i], dy = points.y[j] - points.y[i];
+				
+				if (dx*dx + dy*dy < radius*radius)
+					expected++;
+			}
+			
+			int actual = 0;
+			int column = grid.getColumn(points.x[i]), row = grid.getRow(points.y[i]);
+			
+			for (int r = Math.max(row-1, 0); r <= Math.min(row+1, grid.getRows()-1); r++) {
+				for (int c = Math.max(column-1, 0); c <= Math.min(column+1, grid.getColumns()-1); c++) {
+					for (int k = grid.getCellStart(c, r); k < grid.getCellEnd(c, r); k++) {
+						int j = grid.getIndex(k);
+						int dx = points.x[j] - points.x[i], dy = points.y[j] - points.y[i];
+						
+						if (dx*dx + dy*dy < radius*radius)
+							actual++;
+					}
+				}
+			}
+			
+			assertEquals(expected, actual);
+		}
+	}
+}
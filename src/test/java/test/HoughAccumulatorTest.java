@@ -0,0 +1,148 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import main.ExecutionContext;
+import main.HoughAccumulator;
+
+/**
+ * Test class for voting accumulator in Hough space.
+ * @author julien.pontabry
+ */
+public class HoughAccumulatorTest {
+	/**
+	 * Test method for {@link HoughAccumulator#runWith(HoughSpace)} on simulated clusters.
+	 */
+	@Test
+	public void testRunWith() {
+		Random generator = new Random(0);
+		HoughSpace points = HoughAccumulatorTest.getClusters(generator);
+		
+		// Uniform noise
+		for (int i = 0; i < 100; i++)
+			points.add(Math.PI * (generator.nextDouble() - 0.5), 200.0 * (generator.nextDouble() - 0.5));
+		
+		HoughAccumulator accumulator = new HoughAccumulator(new HoughPoint(2.5*Math.PI/180.0, 5.0));
+		HoughSpace peaks = accumulator.runWith(points);
+		int[] scores = accumulator.getScores();
+		
+		assertEquals(peaks.size, scores.length);
+		
+		// The two best peaks are the clusters
+		int first = 0, second = -1;
+		for (int i = 1; i < scores.length; i++) {
+			if (scores[i] > scores[first]) {
+				second = first;
+				first = i;
+			}
+			else if (second < 0 || scores[i] > scores[second])
+				second = i;
+		}
+		
+		assertEquals(0.3, peaks.theta[first], 0.01);
+		assertEquals(50.0, peaks.rho[first], 1.0);
+		assertTrue(scores[first] >= 290 && scores[first] <= 310);
+		
+		assertEquals(-0.8, peaks.theta[second], 0.01);
+		assertEquals(-20.0, peaks.rho[second], 1.0);
+		assertTrue(scores[second] >= 90 && scores[second] <= 110);
+		
+		// Same result whatever the number of threads
+		try (ExecutionContext context = new ExecutionContext(3)) {
+			HoughAccumulator other = new HoughAccumulator(new HoughPoint(2.5*Math.PI/180.0, 5.0));
+			other.setExecutor(context.getExecutor());
+			other.runWith(points);
+			
+			assertArrayEquals(scores, other.getScores());
+			assertEquals(peaks.toList(), other.getPeaks().toList());
+		}
+	}
+	
+	/**
+	 * Test that a cluster cut by the angular border gives a single peak.
+	 */
+	@Test
+	public void testRunWithPeriodic() {
+		HoughSpace points = HoughAccumulatorTest.getBorderCluster();
+		HoughAccumulator accumulator = new HoughAccumulator(new HoughPoint(0.05, 1.0));
+		HoughSpace peaks = accumulator.runWith(points);
+		
+		assertEquals(1, peaks.size);
+		assertEquals(20, accumulator.getScores()[0]);
+		assertTrue(peaks.theta[0] >= -Math.PI/2.0 && peaks.theta[0] < Math.PI/2.0);
+		assertEquals(Math.PI/2.0, Math.abs(peaks.theta[0]), 0.01);
+		assertEquals(10.0, Math.abs(peaks.rho[0]), 0.1);
+		assertTrue(Math.signum(peaks.theta[0]) == Math.signum(peaks.rho[0]));
+	}
+	
+	/**
+	 * Test that an empty input gives no peak.
+	 */
+	@Test
+	public void testRunWithEmpty() {
+		HoughAccumulator accumulator = new HoughAccumulator(new HoughPoint(0.05, 1.0));
+		
+		assertEquals(0, accumulator.runWith(new HoughSpace()).size);
+		assertEquals(0, accumulator.getScores().length);
+	}
+	
+	/**
+	 * Simulate two separated clusters of different sizes in Hough space.
+	 * The first cluster has 300 points around (0.3,50) and the second one
+	 * has 100 points around (-0.8,-20).
+	 * @param generator Random generator of the points.
+	 * @return The points of both clusters.
+	 */
+	public static HoughSpace getClusters(Random generator) {
+		HoughSpace points = new HoughSpace();
+		
+		for (int i = 0; i < 300; i++)
+			points.add(0.3 + 0.01*generator.nextGaussian(), 50.0 + generator.nextGaussian());
+		
+		for (int i = 0; i < 100; i++)
+			points.add(-0.8 + 0.01*generator.nextGaussian(), -20.0 + generator.nextGaussian());
+		
+		return points;
+	}
+	
+	/**
+	 * Simulate a cluster of 20 points cut by the angular border of Hough space
+	 * around (pi/2,10), which is also (-pi/2,-10).
+	 * @return The points of the cluster.
+	 */
+	public static HoughSpace getBorderCluster() {
+		HoughSpace points = new HoughSpace();
+		
+		for (int i = 0; i < 10; i++) {
+			double offset = 0.001 * i;
+			points.add( Math.PI/2.0 - 0.005 - offset,  10.0 + offset);
+			points.add(-Math.PI/2.0 + 0.005 + offset, -10.0 - offset);
+		}
+		
+		return points;
+	}
+}
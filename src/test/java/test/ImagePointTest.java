@@ -324,7 +324,81 @@ public class ImagePointTest {
 		assertEquals(1.4056476493802699, h.theta, 1e-4);
 		assertEquals(0., h.rho, 0.5);
 	}
+	
+	/**
+	 * Test method for {@link ImagePoint#estimateHoughPoint(int, int, int[], int[], int)}
+	 * and {@link ImagePoint#estimateHoughPoint(int, int, int[], int[], int, AngleTable)}.
+	 */
+	@Test
+	public void testEstimateHoughPointArray() {
+		// Same estimate as with the list of points (even number of points, single point and random neighborhoods)
+		Random generator = new Random(0);
+		
+		for (int n : new int[] { 1, 2, 7, 8, 100, 1000 }) {
+			ImagePoint p0 = new ImagePoint(generator.nextInt(100)-50, generator.nextInt(100)-50);
+			List<ImagePoint> points = new Vector<>();
+			ImagePointArray array = new ImagePointArray();
+			
+			for (int i = 0; i < n; i++) {
+				int x = p0.x + generator.nextInt(51)-25;
+				int y = p0.y + (x - p0.x)/2 + generator.nextInt(5)-2;
+				points.add(new ImagePoint(x, y));
+				array.add(x, y);
+			}
+			
+			HoughPoint expected = ImagePoint.estimateHoughPoint(p0, points);
+			HoughPoint   actual = ImagePoint.estimateHoughPoint(p0.x, p0.y, array.x, array.y, array.size);
+			
+			assertEquals(expected.theta, actual.theta, this.epsilon);
+			assertEquals(expected.rho, actual.rho, this.epsilon);
+			
+			// With lookup table covering all offsets or only part of them
+			for (int halfSize : new int[] { 25, 10 }) {
+				actual = ImagePoint.estimateHoughPoint(p0.x, p0.y, array.x, array.y, array.size, new AngleTable(halfSize));
+				
+				assertEquals(expected.theta, actual.theta, this.epsilon);
+				assertEquals(expected.rho, actual.rho, this.epsilon);
+			}
+		}
+	}
 
+	/**
+	 * Test method for {@link ImagePoint#estimateHoughPointWithStructureTensor(int, int, int[], int[], int)}.
+	 */
+	@Test
+	public void testEstimateHoughPointWithStructureTensor() {
+		// Points on lines of several directions through p0 (including the borders of angular range)
+		int[][] directions = { {1,0}, {0,1}, {1,1}, {1,-1}, {3,1}, {1,-3}, {10,1} };
+		ImagePoint p0 = new ImagePoint(7, -3);
+		
+		for (int[] direction : directions) {
+			ImagePointArray points = new ImagePointArray();
+			
+			for (int t = -5; t <= 5; t++) {
+				if (t != 0)
+					points.add(p0.x + t*direction[0], p0.y + t*direction[1]);
+			}
+			
+			HoughPoint expected = ImagePoint.estimateHoughPoint(p0.x, p0.y, points.x, points.y, points.size);
+			HoughPoint   actual = ImagePoint.estimateHoughPointWithStructureTensor(p0.x, p0.y, points.x, points.y, points.size);
+			
+			assertTrue(actual.theta >= -Math.PI/2.0 && actual.theta < Math.PI/2.0);
+			
+			// Same line (up to the angular period)
+			double thetaDiff = Math.abs(expected.theta - actual.theta);
+			
+			if (thetaDiff < 1e-10)
+				assertEquals(expected.rho, actual.rho, 1e-8);
+			else {
+				assertEquals(Math.PI, thetaDiff, 1e-10);
+				assertEquals(-expected.rho, actual.rho, 1e-8);
+			}
+			
+			for (int i = 0; i < points.size; i++)
+				assertEquals(actual.rho, points.x[i]*Math.cos(actual.theta) + points.y[i]*Math.sin(actual.theta), 1e-8);
+		}
+	}
+	
 	/**
 	 * Test method for {@link ImagePoint#getCenterPointOfImage(ImagePlus)}.
 	 */
@@ -532,6 +606,49 @@ public class ImagePointTest {
 		}
 	}
 	
+	/**
+	 * Test method for {@link ImagePoint#getImageForegroundPointArray(ImagePlus, Roi, ImagePoint)}.
+	 */
+	@Test
+	public void testGetImageForegroundPointArray() {
+		ImagePointArray points;
+		ImagePlus image = NewImage.createByteImage("", 7, 5, 1, NewImage.FILL_BLACK);
+		image.setRoi(0, 0, image.getWidth(), image.getHeight());
+		ImageProcessor processor = image.getProcessor();
+		ImagePoint origin = ImagePoint.getCenterPointOfImage(image);
+		
+		// No points
+		processor.setValue(0); processor.fill();
+		points = ImagePoint.getImageForegroundPointArray(image, image.getRoi(), origin);
+		assertEquals(0, points.size());
+		
+		// Few points (given in row-major order)
+		processor.set(5, 0, 1);
+		processor.set(1, 2, 255);
+		processor.set(3, 2, 1);
+		processor.set(0, 4, 1);
+		points = ImagePoint.getImageForegroundPointArray(image, image.getRoi(), origin);
+		assertEquals(4, points.size());
+		assertEquals(new ImagePoint(5, 0).subtract(origin), points.get(0));
+		assertEquals(new ImagePoint(1, 2).subtract(origin), points.get(1));
+		assertEquals(new ImagePoint(3, 2).subtract(origin), points.get(2));
+		assertEquals(new ImagePoint(0, 4).subtract(origin), points.get(3));
+		
+		// All points with ROI (partially outside of image)
+		processor.setValue(1); processor.fill();
+		Roi roi = new Roi(5, 3, 4, 4);
+		points = ImagePoint.getImageForegroundPointArray(image, roi, origin);
+		assertEquals(4, points.size());
+		for (int i = 0; i < points.size(); i++) {
+			assertEquals(1, processor.get(points.x[i]+origin.x, points.y[i]+origin.y));
+			assertTrue(roi.contains(points.x[i]+origin.x, points.y[i]+origin.y));
+		}
+		
+		// Same points than the list version
+		List<ImagePoint> list = ImagePoint.getImageForegroundPoints(image, roi, origin);
+		assertEquals(points.toList(), list);
+	}
+	
 	/**
 	 * Test method for {@link ImagePoint#setLocation(double, double)}
 	 */
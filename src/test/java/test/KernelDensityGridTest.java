@@ -0,0 +1,155 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import main.KernelDensityGrid;
+import main.MeanShift;
+
+/**
+ * Test class for kernel density estimate on a grid.
+ * @author julien.pontabry
+ */
+public class KernelDensityGridTest {
+	/**
+	 * Test method for {@link KernelDensityGrid#runWith(HoughSpace)} against mean-shift on simulated clusters.
+	 */
+	@Test
+	public void testRunWith() {
+		HoughSpace points = HoughAccumulatorTest.getClusters(new Random(0));
+		HoughPoint h = new HoughPoint(2.5*Math.PI/180.0, 5.0);
+		KernelDensityGrid density = new KernelDensityGrid(h);
+		HoughSpace modes = density.runWith(points);
+		
+		MeanShift meanShift = new MeanShift(h);
+		meanShift.setPeriodic(true);
+		meanShift.runWith(points);
+		List<HoughPoint> expectedModes = meanShift.getModes();
+		
+		// Same modes, and basins have the same counts as the points converging to each mode
+		assertEquals(expectedModes.size(), modes.size);
+		assertEquals(modes.size, density.getScores().length);
+		
+		for (int i = 0; i < modes.size; i++) {
+			int j = 0;
+			while (j < expectedModes.size() && Math.abs(expectedModes.get(j).rho - modes.rho[i]) > 1.0)
+				j++;
+			
+			assertTrue(j < expectedModes.size());
+			assertEquals(expectedModes.get(j).theta, modes.theta[i], 0.005);
+			assertEquals(expectedModes.get(j).rho, modes.rho[i], 0.5);
+			
+			int count = 0;
+			for (int label : points.labels) {
+				if (label == j)
+					count++;
+			}
+			
+			assertEquals(count, density.getScores()[i]);
+		}
+	}
+	
+	/**
+	 * Test that a cluster cut by the angular border gives a single mode.
+	 */
+	@Test
+	public void testRunWithPeriodic() {
+		HoughSpace points = HoughAccumulatorTest.getBorderCluster();
+		KernelDensityGrid density = new KernelDensityGrid(new HoughPoint(0.05, 1.0));
+		HoughSpace modes = density.runWith(points);
+		
+		assertEquals(1, modes.size);
+		assertEquals(20, density.getScores()[0]);
+		assertTrue(modes.theta[0] >= -Math.PI/2.0 && modes.theta[0] < Math.PI/2.0);
+		assertEquals(Math.PI/2.0, Math.abs(modes.theta[0]), 0.01);
+		assertEquals(10.0, Math.abs(modes.rho[0]), 0.1);
+		assertTrue(Math.signum(modes.theta[0]) == Math.signum(modes.rho[0]));
+	}
+	
+	/**
+	 * Test that clusters closer than the bandwidth merge into a single basin,
+	 * while farther clusters keep their own basin.
+	 */
+	@Test
+	public void testRunWithCloseClusters() {
+		HoughPoint h = new HoughPoint(2.5*Math.PI/180.0, 5.0);
+		
+		for (double distance : new double[] { 4.0, 30.0 }) {
+			Random generator = new Random(0);
+			HoughSpace points = new HoughSpace();
+			
+			for (int i = 0; i < 200; i++) {
+				points.add(0.3 + 0.005*generator.nextGaussian(), 50.0 + 0.5*generator.nextGaussian());
+				points.add(0.3 + 0.005*generator.nextGaussian(), 50.0 + distance + 0.5*generator.nextGaussian());
+			}
+			
+			KernelDensityGrid density = new KernelDensityGrid(h);
+			HoughSpace modes = density.runWith(points);
+			
+			if (distance < 2.0*h.rho) {
+				// The density has a single mode between both clusters
+				assertEquals(1, modes.size);
+				assertEquals(400, density.getScores()[0]);
+				assertEquals(50.0 + 0.5*distance, modes.rho[0], 1.0);
+			}
+			else {
+				assertEquals(2, modes.size);
+				assertArrayEquals(new int[] { 200, 200 }, density.getScores());
+				assertEquals(50.0, Math.min(modes.rho[0], modes.rho[1]), 0.5);
+				assertEquals(50.0 + distance, Math.max(modes.rho[0], modes.rho[1]), 0.5);
+			}
+			
+			assertEquals(0.3, modes.theta[0], 0.005);
+		}
+	}
+	
+	/**
+	 * Test that the modes and their counts do not depend on the size of bins.
+	 */
+	@Test
+	public void testRunWithBinning() {
+		HoughSpace points = HoughAccumulatorTest.getClusters(new Random(1));
+		HoughPoint h = new HoughPoint(2.5*Math.PI/180.0, 5.0);
+		
+		KernelDensityGrid fine = new KernelDensityGrid(h);
+		HoughSpace fineModes = fine.runWith(points);
+		
+		for (double binning : new double[] { 0.125, 0.5 }) {
+			KernelDensityGrid density = new KernelDensityGrid(h);
+			density.setBinning(binning);
+			HoughSpace modes = density.runWith(points);
+			
+			assertEquals(fineModes.size, modes.size);
+			assertArrayEquals(fine.getScores(), density.getScores());
+			
+			for (int i = 0; i < modes.size; i++) {
+				assertEquals(fineModes.theta[i], modes.theta[i], 0.5*binning*h.theta);
+				assertEquals(fineModes.rho[i], modes.rho[i], 0.5*binning*h.rho);
+			}
+		}
+	}
+}
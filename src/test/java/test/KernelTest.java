@@ -0,0 +1,134 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import coordinates.HoughPoint;
+import main.EpanechnikovKernel;
+import main.FlatKernel;
+import main.GaussianKernel;
+import main.Kernel;
+import main.MeanShift;
+import main.TabulatedGaussianKernel;
+
+/**
+ * Test class for mean-shift kernels.
+ * @author julien.pontabry
+ */
+public class KernelTest {
+	/** Number of positions tested over the kernel support. */
+	private final int numberOfPositions = 100000;
+	
+	/**
+	 * Compute the maximal absolute difference between two kernels over the support.
+	 * @param k1 First kernel.
+	 * @param k2 Second kernel.
+	 * @return Maximal absolute difference.
+	 */
+	private double computeMaximalError(Kernel k1, Kernel k2) {
+		double maximalError = 0.0;
+		
+		for (int i = 0; i < this.numberOfPositions; i++) {
+			double u2 = i * MeanShift.maxDomain / this.numberOfPositions;
+			maximalError = Math.max(maximalError, Math.abs(k1.weight(u2) - k2.weight(u2)));
+		}
+		
+		return maximalError;
+	}
+	
+	/**
+	 * Test method for {@link TabulatedGaussianKernel#weight(double)}.
+	 * 
+	 * The interpolation error is bounded by step^2/32, where step is maxDomain
+	 * divided by the number of samples.
+	 */
+	@Test
+	public void testTabulatedGaussianKernel() {
+		Kernel gaussian = new GaussianKernel();
+		
+		// Default table (error below 1e-6)
+		double error = this.computeMaximalError(gaussian, new TabulatedGaussianKernel());
+		assertTrue("Expected error below <1e-6>, got <"+error+">", error < 1e-6);
+		
+		// Table sizes and theoretical bounds
+		for (int numberOfSamples : new int[] { 16, 128, 4096 }) {
+			double step = MeanShift.maxDomain / numberOfSamples;
+			double bound = step*step / 32.0;
+			
+			error = this.computeMaximalError(gaussian, new TabulatedGaussianKernel(numberOfSamples));
+			assertTrue("Expected error below <"+bound+">, got <"+error+">", error <= bound);
+		}
+		
+		// Exact at sampled positions
+		assertEquals(1.0, new TabulatedGaussianKernel().weight(0.0), 1e-15);
+	}
+	
+	/**
+	 * Test method for {@link EpanechnikovKernel#weight(double)} and {@link FlatKernel#weight(double)}.
+	 */
+	@Test
+	public void testPolynomialKernels() {
+		Kernel epanechnikov = new EpanechnikovKernel();
+		assertEquals(1.0, epanechnikov.weight(0.0), 1e-15);
+		assertEquals(0.5, epanechnikov.weight(MeanShift.maxDomain / 2.0), 1e-15);
+		assertEquals(0.0, epanechnikov.weight(MeanShift.maxDomain), 1e-15);
+		
+		Kernel flat = new FlatKernel();
+		assertEquals(1.0, flat.weight(0.0), 1e-15);
+		assertEquals(1.0, flat.weight(MeanShift.maxDomain / 2.0), 1e-15);
+	}
+	
+	/**
+	 * Test that mean-shift with alternative kernels finds the same modes on well separated clusters.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMeanShiftKernels() throws Exception {
+		List<HoughPoint> data = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"data.csv", ",");
+		HoughPoint h = new HoughPoint(0.5, 0.5);
+		
+		MeanShift meanShift = new MeanShift(h);
+		meanShift.runWith(data);
+		
+		// Tabulated Gaussian gives the same modes up to interpolation error
+		MeanShift tabulatedMeanShift = new MeanShift(h, new TabulatedGaussianKernel());
+		tabulatedMeanShift.runWith(data);
+		
+		assertEquals(meanShift.getModes().size(), tabulatedMeanShift.getModes().size());
+		for (int i = 0; i < meanShift.getModes().size(); i++) {
+			assertEquals(meanShift.getModes().get(i).theta, tabulatedMeanShift.getModes().get(i).theta, 1e-4);
+			assertEquals(meanShift.getModes().get(i).rho, tabulatedMeanShift.getModes().get(i).rho, 1e-4);
+		}
+		
+		// Epanechnikov kernel finds the same clusters
+		MeanShift epanechnikovMeanShift = new MeanShift(h, new EpanechnikovKernel());
+		epanechnikovMeanShift.runWith(data);
+		
+		assertEquals(meanShift.getModes().size(), epanechnikovMeanShift.getModes().size());
+		for (int i = 0; i < meanShift.getModes().size(); i++) {
+			assertEquals(meanShift.getModes().get(i).theta, epanechnikovMeanShift.getModes().get(i).theta, 0.1);
+			assertEquals(meanShift.getModes().get(i).rho, epanechnikovMeanShift.getModes().get(i).rho, 0.1);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import coordinates.HoughSpace;
+import coordinates.ImagePointArray;
+import coordinates.LineEstimator;
+import ij.IJ;
+import ij.ImagePlus;
+import main.ExecutionContext;
+import main.LocalModelSampler;
+
+/**
+ * Test class for estimation of local models of skeleton pixels.
+ * @author julien.pontabry
+ */
+public class LocalModelSamplerTest {
+	/**
+	 * Test method for {@link LocalModelSampler#remove(boolean[])}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRemove() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		for (LineEstimator estimator : LineEstimator.values()) {
+			try (ExecutionContext context = new ExecutionContext()) {
+				LocalModelSampler sampler = new LocalModelSampler(skeletons, skeletons.getRoi(), 25, estimator, context.getExecutor());
+				ImagePointArray foregroundPoints = sampler.getForegroundPoints();
+				HoughSpace expectedField = sampler.estimateAll(context.getExecutor());
+				assertEquals(foregroundPoints.size, sampler.getNumberOfActivePoints());
+				
+				// Remove the upper half of the image
+				boolean[] mask = new boolean[foregroundPoints.size];
+				int numberOfRemovedPoints = 0;
+				
+				for (int i = 0; i < foregroundPoints.size; i++) {
+					mask[i] = foregroundPoints.y[i] < 0;
+					
+					if (mask[i])
+						numberOfRemovedPoints++;
+				}
+				
+				assertEquals(numberOfRemovedPoints, sampler.remove(mask));
+				assertEquals(0, sampler.remove(mask));
+				assertEquals(foregroundPoints.size - numberOfRemovedPoints, sampler.getNumberOfActivePoints());
+				
+				// Removed points have no local model, and the points whose
+				// window does not contain removed points are not changed
+				HoughSpace field = sampler.estimateAll(context.getExecutor());
+				
+				for (int i = 0; i < foregroundPoints.size; i++) {
+					assertEquals(mask[i], sampler.isRemoved(i));
+					
+					if (mask[i])
+						assertTrue(Double.isNaN(field.theta[i]));
+					else if (foregroundPoints.y[i] > 25) {
+						assertEquals(expectedField.theta[i], field.theta[i], 0.0);
+						assertEquals(expectedField.rho[i], field.rho[i], 0.0);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import main.MeanShift;
+
+/**
+ * Test class for mean-shift algorithm.
+ * @author julien.pontabry
+ */
+public class MeanShiftTest {
+	/**
+	 * Exhaustive mean-shift used as reference (every data point is visited at each step).
+	 * @param data Input data points.
+	 * @param h Bandwidths.
+	 * @return The converged point of each data point.
+	 */
+	public static List<HoughPoint> runExhaustiveMeanShift(List<HoughPoint> data, HoughPoint h) {
+		List<HoughPoint> convergedPoints = new Vector<HoughPoint>();
+		
+		for (HoughPoint p0 : data) {
+			HoughPoint p = new HoughPoint(p0);
+			double error;
+			int iteration = 0;
+			
+			do {
+				double sumOfWeights = 0.0, x = 0.0, y = 0.0;
+				
+				for (HoughPoint q : data) {
+					double tmpx = (p.theta - q.theta) / h.theta;
+					double tmpy = (p.rho - q.rho) / h.rho;
+					double u2 = tmpx*tmpx + tmpy*tmpy;
+					
+					if (u2 < MeanShift.maxDomain) {
+						double weight = Math.exp(-0.5 * u2);
+						sumOfWeights += weight;
+						x += q.theta * weight;
+						y += q.rho * weight;
+					}
+				}
+				
+				double xDiff = x/sumOfWeights - p.theta, yDiff = y/sumOfWeights - p.rho;
+				error = xDiff*xDiff + yDiff*yDiff;
+				p.setLocation(x/sumOfWeights, y/sumOfWeights);
+				iteration++;
+			} while (error > 1e-10 && iteration < 1000);
+			
+			convergedPoints.add(p);
+		}
+		
+		return convergedPoints;
+	}
+	
+	/**
+	 * Test method for {@link MeanShift#runWith(List)} on simulated clusters.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWith() throws Exception {
+		List<HoughPoint>   data = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"data.csv", ",");
+		List<HoughPoint>  modes = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"modes.csv", ",");
+		List<Integer>    labels = CsvManager.readIntegers(Extract_DNA_FibersTest.testpath+"labels.csv", ",");
+		
+		MeanShift meanShift = new MeanShift(new HoughPoint(0.5, 0.5));
+		meanShift.runWith(data);
+		
+		assertEquals(modes.size(), meanShift.getModes().size());
+		
+		for (int i = 0; i < modes.size(); i++) {
+			assertEquals(modes.get(i).theta, meanShift.getModes().get(i).theta, 0.1);
+			assertEquals(modes.get(i).rho, meanShift.getModes().get(i).rho, 0.1);
+		}
+		
+		int differences = 0;
+		for (int i = 0; i < labels.size(); i++) {
+			if (!labels.get(i).equals(meanShift.getLabels().get(i)))
+				differences++;
+		}
+		
+		assertTrue("Too many different labels ("+differences+")", differences < 0.01*labels.size());
+	}
+	
+	/**
+	 * Test that restricting the mean-shift steps to the kernel support gives the same result than the exhaustive search.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithKernelSupport() throws Exception {
+		List<HoughPoint> data = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"hough_points_lowsample.csv", ",").subList(0, 1500);
+		HoughPoint h = new HoughPoint(2.5 * Math.PI/180.0, 5.0);
+		
+		MeanShift meanShift = new MeanShift(h);
+		meanShift.runWith(data);
+		List<HoughPoint> expectedPoints = MeanShiftTest.runExhaustiveMeanShift(data, h);
+		
+		List<HoughPoint> modes = meanShift.getModes();
+		List<Integer>   labels = meanShift.getLabels();
+		
+		assertEquals(data.size(), labels.size());
+		
+		for (int i = 0; i < data.size(); i++) {
+			HoughPoint mode = modes.get(labels.get(i));
+			assertEquals(expectedPoints.get(i).theta, mode.theta, 1e-2);
+			assertEquals(expectedPoints.get(i).rho, mode.rho, 1e-2);
+		}
+	}
+	
+	/**
+	 * Test method for {@link MeanShift#setBinning(double)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithBinning() throws Exception {
+		List<HoughPoint> data = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"data.csv", ",");
+		
+		MeanShift meanShift = new MeanShift(new HoughPoint(0.5, 0.5));
+		meanShift.runWith(data);
+		
+		MeanShift binnedMeanShift = new MeanShift(new HoughPoint(0.5, 0.5));
+		binnedMeanShift.setBinning(0.1);
+		binnedMeanShift.runWith(data);
+		
+		// Same contract than without binning
+		assertEquals(data.size(), binnedMeanShift.getLabels().size());
+		assertEquals(meanShift.getModes().size(), binnedMeanShift.getModes().size());
+		
+		for (int i = 0; i < meanShift.getModes().size(); i++) {
+			assertEquals(meanShift.getModes().get(i).theta, binnedMeanShift.getModes().get(i).theta, 0.05);
+			assertEquals(meanShift.getModes().get(i).rho, binnedMeanShift.getModes().get(i).rho, 0.05);
+		}
+		
+		int differences = 0;
+		for (int i = 0; i < data.size(); i++) {
+			if (!meanShift.getLabels().get(i).equals(binnedMeanShift.getLabels().get(i)))
+				differences++;
+		}
+		
+		assertTrue("Too many different labels ("+differences+")", differences < 0.01*data.size());
+	}
+	
+	/**
+	 * Test merging of converged points when there are many modes.
+	 */
+	@Test
+	public void testRunWithManyModes() {
+		// Isolated pairs of points (further than kernel support) on a regular grid
+		List<HoughPoint> data = new Vector<HoughPoint>();
+		
+		for (int i = 0; i < 50; i++) {
+			for (int j = 0; j < 50; j++) {
+				data.add(new HoughPoint(10.0*i, 10.0*j));
+				data.add(new HoughPoint(10.0*i + 1e-3, 10.0*j));
+			}
+		}
+		
+		MeanShift meanShift = new MeanShift();
+		meanShift.runWith(data);
+		
+		assertEquals(data.size()/2, meanShift.getModes().size());
+		
+		for (int i = 0; i < data.size(); i++) {
+			int label = meanShift.getLabels().get(i);
+			assertEquals(i/2, label);
+			assertEquals(data.get(i).theta, meanShift.getModes().get(label).theta, 1e-2);
+			assertEquals(data.get(i).rho, meanShift.getModes().get(label).rho, 1e-2);
+		}
+	}
+	
+	/**
+	 * Test that seeds stop where they are when no point weights in the kernel.
+	 */
+	@Test
+	public void testRunWithZeroWeights() {
+		List<HoughPoint> data = new Vector<HoughPoint>();
+		
+		for (int i = 0; i < 20; i++)
+			data.add(new HoughPoint(0.1*i, 1.0*i));
+		
+		MeanShift meanShift = new MeanShift(new HoughPoint(1,1), u2 -> 0.0);
+		meanShift.runWith(data);
+		
+		assertEquals(data.size(), meanShift.getModes().size());
+		assertTrue(meanShift.getNumberOfIterations() < data.size());
+		
+		for (int i = 0; i < data.size(); i++) {
+			HoughPoint mode = meanShift.getModes().get(meanShift.getLabels().get(i));
+			assertEquals(data.get(i).theta, mode.theta, 1e-12);
+			assertEquals(data.get(i).rho, mode.rho, 1e-12);
+		}
+	}
+	
+	/**
+	 * Test method for {@link MeanShift#setRelaxation(double)}.
+	 */
+	@Test
+	public void testSetRelaxation() {
+		MeanShift meanShift = new MeanShift();
+		meanShift.setRelaxation(1.5);
+		assertEquals(1.5, meanShift.getRelaxation(), 0.0);
+		
+		for (double relaxation : new double[] { 0.0, -1.0, 2.0, 3.0, Double.NaN }) {
+			try {
+				meanShift.setRelaxation(relaxation);
+				fail("Relaxation factor "+relaxation+" should be rejected");
+			}
+			catch (IllegalArgumentException e) {
+				assertEquals(1.5, meanShift.getRelaxation(), 0.0);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link MeanShift#runWith(HoughSpace)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithHoughSpace() throws Exception {
+		List<HoughPoint> data = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"data.csv", ",");
+		HoughSpace space = new HoughSpace(data);
+		
+		MeanShift meanShift = new MeanShift(new HoughPoint(0.5, 0.5));
+		meanShift.runWith(space);
+		
+		// Labels are set in the container and are the same than with the list interface
+		assertEquals(data.size(), space.labels.length);
+		
+		for (int i = 0; i < data.size(); i++)
+			assertEquals(meanShift.getLabels().get(i).intValue(), space.labels[i]);
+		
+		HoughSpace modes = meanShift.getModesSpace();
+		assertEquals(meanShift.getModes().size(), modes.size());
+		
+		for (int i = 0; i < modes.size(); i++)
+			assertEquals(meanShift.getModes().get(i), modes.get(i));
+	}
+	
+	/**
+	 * Test method for {@link MeanShift#setPeriodic(boolean)}.
+	 */
+	@Test
+	public void testRunWithPeriodic() {
+		// A cluster cut by the angular border: points (theta,rho) close to -pi/2
+		// are the same lines as points (theta+pi,-rho) close to pi/2
+		List<HoughPoint> data = new Vector<HoughPoint>();
+		
+		for (int i = 0; i < 10; i++) {
+			double offset = 0.001 * i;
+			data.add(new HoughPoint( Math.PI/2.0 - 0.005 - offset,  10.0 + offset));
+			data.add(new HoughPoint(-Math.PI/2.0 + 0.005 + offset, -10.0 - offset));
+		}
+		
+		MeanShift meanShift = new MeanShift(new HoughPoint(0.05, 1.0));
+		
+		// Without periodicity, the two halves give two modes
+		meanShift.runWith(data);
+		assertEquals(2, meanShift.getModes().size());
+		
+		// With periodicity, there is a single mode within the angular range
+		meanShift.setPeriodic(true);
+		assertTrue(meanShift.isPeriodic());
+		meanShift.runWith(data);
+		
+		List<HoughPoint> modes = meanShift.getModes();
+		assertEquals(1, modes.size());
+		
+		HoughPoint mode = modes.get(0);
+		assertTrue(mode.theta >= -Math.PI/2.0 && mode.theta < Math.PI/2.0);
+		assertEquals(Math.PI/2.0, Math.abs(mode.theta), 0.01);
+		assertEquals(10.0, Math.abs(mode.rho), 0.1);
+		assertTrue(Math.signum(mode.theta) == Math.signum(mode.rho));
+		
+		for (Integer label : meanShift.getLabels())
+			assertEquals(0, label.intValue());
+	}
+	
+	/**
+	 * Test method for {@link MeanShift#setAssignmentRadius(double)} and {@link MeanShift#setRelaxation(double)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithAcceleration() throws Exception {
+		List<HoughPoint>   data = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"data.csv", ",");
+		List<HoughPoint>  modes = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"modes.csv", ",");
+		List<Integer>    labels = CsvManager.readIntegers(Extract_DNA_FibersTest.testpath+"labels.csv", ",");
+		
+		MeanShift meanShift = new MeanShift(new HoughPoint(0.5, 0.5));
+		meanShift.runWith(data);
+		long standardIterations = meanShift.getNumberOfIterations();
+		assertEquals(0, meanShift.getNumberOfEarlyAssignments());
+		
+		meanShift.setAssignmentRadius(0.1);
+		meanShift.setRelaxation(1.5);
+		meanShift.runWith(data);
+		
+		assertTrue(meanShift.getNumberOfEarlyAssignments() > 0);
+		assertTrue(meanShift.getNumberOfIterations() < standardIterations);
+		
+		assertEquals(modes.size(), meanShift.getModes().size());
+		
+		for (int i = 0; i < modes.size(); i++) {
+			assertEquals(modes.get(i).theta, meanShift.getModes().get(i).theta, 0.1);
+			assertEquals(modes.get(i).rho, meanShift.getModes().get(i).rho, 0.1);
+		}
+		
+		int differences = 0;
+		for (int i = 0; i < labels.size(); i++) {
+			if (!labels.get(i).equals(meanShift.getLabels().get(i)))
+				differences++;
+		}
+		
+		assertTrue("Too many different labels ("+differences+")", differences < 0.01*labels.size());
+	}
+	
+	/**
+	 * Test that the result does not depend on the dispatching of seeds ({@link MeanShift#setChunkSize(int)}).
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithChunkSize() throws Exception {
+		List<HoughPoint> data = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"hough_points_lowsample.csv", ",");
+		
+		MeanShift meanShift = new MeanShift(new HoughPoint(2.5*Math.PI/180.0, 5.0));
+		meanShift.runWith(data);
+		List<HoughPoint> expectedModes = meanShift.getModes();
+		List<Integer>   expectedLabels = meanShift.getLabels();
+		
+		for (int chunkSize : new int[] { 1, 7, data.size() }) {
+			meanShift.setChunkSize(chunkSize);
+			meanShift.runWith(data);
+			
+			assertEquals(expectedModes, meanShift.getModes());
+			assertEquals(expectedLabels, meanShift.getLabels());
+		}
+	}
+}
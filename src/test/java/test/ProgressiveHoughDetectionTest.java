@@ -0,0 +1,180 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import coordinates.HoughPoint;
+import coordinates.HoughSpace;
+import coordinates.LineEstimator;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.Line;
+import main.ExecutionContext;
+import main.Extract_DNA_Fibers;
+import main.LocalModelSampler;
+import main.ProgressiveHoughDetection;
+
+/**
+ * Test class for progressive detection of lines in Hough space.
+ * @author julien.pontabry
+ */
+public class ProgressiveHoughDetectionTest {
+	/**
+	 * Test method for {@link ProgressiveHoughDetection#runWith(LocalModelSampler, int, int, long, double, double, double)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWith() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		try (ExecutionContext context = new ExecutionContext()) {
+			LocalModelSampler sampler = new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor());
+			HoughSpace expected = Extract_DNA_Fibers.selectHoughPoints(sampler.sample(4000, 42, context.getExecutor()), 0.33, 2.5, 5, Extract_DNA_FibersTest.getOptions(context.getExecutor()));
+			
+			ProgressiveHoughDetection detection = new ProgressiveHoughDetection(0.33, 2.5, 5);
+			List<HoughPoint> deliveredLines = new Vector<HoughPoint>();
+			List<Line>    deliveredSegments = new Vector<Line>();
+			detection.setExecutor(context.getExecutor());
+			detection.setListener((line, lineSegments) -> {
+				deliveredLines.add(line);
+				deliveredSegments.addAll(lineSegments);
+			});
+			List<Line> segments = detection.runWith(sampler, skeletons.getWidth(), skeletons.getHeight(), 42, 30, 50, 1.0);
+			HoughSpace lines = detection.getLines();
+			
+			assertFalse(segments.isEmpty());
+			
+			// The segments of each line are delivered as soon as the line is detected
+			assertEquals(lines.toList(), deliveredLines);
+			assertEquals(segments, deliveredSegments);
+			
+			// The points of detected lines are removed, so they are not detected twice
+			for (int i = 0; i < lines.size; i++) {
+				for (int j = i+1; j < lines.size; j++)
+					assertFalse(Math.abs(lines.theta[i] - lines.theta[j]) < 2.5*Math.PI/180.0 && Math.abs(lines.rho[i] - lines.rho[j]) < 5.0);
+			}
+			
+			assertTrue(sampler.getNumberOfActivePoints() < sampler.getForegroundPoints().size);
+			
+			// The selected points are among the detected lines
+			for (HoughPoint p : expected.toList()) {
+				boolean found = false;
+				
+				for (int i = 0; i < lines.size; i++)
+					found |= Math.abs(p.theta - lines.theta[i]) < 2.5*Math.PI/180.0 && Math.abs(p.rho - lines.rho[i]) < 5.0;
+				
+				assertTrue("No line close to "+p, found);
+			}
+			
+			// Fewer samples are drawn as the image is explained
+			assertTrue(detection.getNumberOfSamples() < lines.size * detection.getNumberOfPoints());
+		}
+	}
+	
+	/**
+	 * Test that the detection does not depend on the number of threads.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithThreads() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		List<HoughPoint> expected = null;
+		
+		for (int threads : new int[] { 1, 4 }) {
+			try (ExecutionContext context = new ExecutionContext(threads)) {
+				LocalModelSampler sampler = new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor());
+				ProgressiveHoughDetection detection = new ProgressiveHoughDetection(0.33, 2.5, 5);
+				detection.setExecutor(context.getExecutor());
+				detection.runWith(sampler, skeletons.getWidth(), skeletons.getHeight(), 7, 30, 50, 1.0);
+				
+				if (expected == null)
+					expected = detection.getLines().toList();
+				else
+					assertEquals(expected, detection.getLines().toList());
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link ProgressiveHoughDetection#setProjectedGaps(boolean)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithProjectedGaps() throws Exception {
+		ImagePlus skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		
+		List<HoughPoint> expectedLines = null;
+		List<Line>    expectedSegments = null;
+		
+		for (boolean projectedGaps : new boolean[] { false, true }) {
+			try (ExecutionContext context = new ExecutionContext()) {
+				LocalModelSampler sampler = new LocalModelSampler(skeletons, skeletons.getRoi(), 25, LineEstimator.THEIL_SEN, context.getExecutor());
+				ProgressiveHoughDetection detection = new ProgressiveHoughDetection(0.33, 2.5, 5);
+				detection.setExecutor(context.getExecutor());
+				detection.setProjectedGaps(projectedGaps);
+				assertEquals(projectedGaps, detection.getProjectedGaps());
+				List<Line> segments = detection.runWith(sampler, skeletons.getWidth(), skeletons.getHeight(), 42, 30, 50, 1.0);
+				
+				if (expectedLines == null) {
+					expectedLines    = detection.getLines().toList();
+					expectedSegments = segments;
+				}
+				else {
+					// Same lines (the segments do not change the removed points)
+					assertEquals(expectedLines, detection.getLines().toList());
+					assertEquals(expectedSegments.size(), segments.size());
+					
+					// Gaps may be found at slightly different places, but the segments cover the same points
+					for (Line segment : expectedSegments) {
+						boolean found = false;
+						
+						for (Line other : segments)
+							found |= ProgressiveHoughDetectionTest.distance(segment.x1, segment.y1, other) < 3.0 && ProgressiveHoughDetectionTest.distance(segment.x2, segment.y2, other) < 3.0;
+						
+						assertTrue("Expected to find <"+segment+"> in list", found);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compute the distance between a point and a segment.
+	 * @param x X coordinate of point.
+	 * @param y Y coordinate of point.
+	 * @param segment Input segment.
+	 * @return The distance to the closest point of the segment.
+	 */
+	private static double distance(double x, double y, Line segment) {
+		double dx = segment.x2 - segment.x1, dy = segment.y2 - segment.y1;
+		double  t = Math.max(0.0, Math.min(1.0, ((x - segment.x1) * dx + (y - segment.y1) * dy) / (dx*dx + dy*dy)));
+		
+		return Math.hypot(x - segment.x1 - t*dx, y - segment.y1 - t*dy);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import coordinates.ImagePointArray;
+import coordinates.RowSumMoments;
+
+/**
+ * Test class for row sums trees of moments.
+ * @author julien.pontabry
+ */
+public class RowSumMomentsTest {
+	/**
+	 * Test method for {@link RowSumMoments#getMoments(int, int, int, double[])}.
+	 */
+	@Test
+	public void testGetMoments() {
+		// Random distinct points
+		Random generator = new Random(0);
+		ImagePointArray points = new ImagePointArray();
+		Set<Long> keys = new HashSet<>();
+		
+		for (int i = 0; i < 2000; i++) {
+			int x = generator.nextInt(200)-120, y = generator.nextInt(150)-40;
+			
+			if (keys.add(((long)x << 32) ^ y))
+				points.add(x, y);
+		}
+		
+		RowSumMoments moments = new RowSumMoments(points);
+		double[] actual = new double[4];
+		
+		// Compare with moments computed by brute force (windows inside, across and outside bounding box)
+		for (int k = 0; k < 200; k++) {
+			int x0 = generator.nextInt(300)-170, y0 = generator.nextInt(250)-90, halfSize = generator.nextInt(30);
+			double n = 0, sxx = 0, syy = 0, sxy = 0;
+			
+			for (int i = 0; i < points.size; i++) {
+				int dx = points.x[i] - x0, dy = points.y[i] - y0;
+				
+				if (Math.abs(dx) <= halfSize && Math.abs(dy) <= halfSize) {
+					n++;
+					sxx += dx*dx;
+					syy += dy*dy;
+					sxy += dx*dy;
+				}
+			}
+			
+			moments.getMoments(x0, y0, halfSize, actual);
+			
+			assertEquals(n, actual[0], 0.0);
+			assertEquals(sxx, actual[1], 0.0);
+			assertEquals(syy, actual[2], 0.0);
+			assertEquals(sxy, actual[3], 0.0);
+		}
+	}
+	
+	/**
+	 * Test method for {@link RowSumMoments#remove(int, int)}.
+	 */
+	@Test
+	public void testRemove() {
+		// Random distinct points
+		Random generator = new Random(1);
+		ImagePointArray points = new ImagePointArray();
+		Set<Long> keys = new HashSet<>();
+		
+		for (int i = 0; i < 2000; i++) {
+			int x = generator.nextInt(200)-120, y = generator.nextInt(150)-40;
+			
+			if (keys.add(((long)x << 32) ^ y))
+				points.add(x, y);
+		}
+		
+		RowSumMoments moments = new RowSumMoments(points);
+		
+		// Remove half of the points
+		boolean[] removed = new boolean[points.size];
+		
+		for (int i = 0; i < points.size; i += 2) {
+			assertTrue(moments.remove(points.x[i], points.y[i]));
+			removed[i] = true;
+		}
+		
+		// Points that are not in the set are not found
+		assertFalse(moments.remove(500, 500));
+		assertFalse(moments.remove(points.x[0], points.y[0]+1000));
+		
+		// Compare with the moments of remaining points
+		ImagePointArray remainingPoints = new ImagePointArray();
+		
+		for (int i = 0; i < points.size; i++) {
+			if (!removed[i])
+				remainingPoints.add(points.x[i], points.y[i]);
+		}
+		
+		RowSumMoments expectedMoments = new RowSumMoments(remainingPoints);
+		double[] expected = new double[4], actual = new double[4];
+		
+		for (int k = 0; k < 200; k++) {
+			int x0 = generator.nextInt(300)-170, y0 = generator.nextInt(250)-90, halfSize = generator.nextInt(30);
+			
+			expectedMoments.getMoments(x0, y0, halfSize, expected);
+			moments.getMoments(x0, y0, halfSize, actual);
+			
+			assertArrayEquals(expected, actual, 0.0);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Manipulate and analyse DNA fibers data
+ * This plugin extracts and unfold the DNA fibers selected by a curve ROI
+ * Copyright (C) 2016  Julien Pontabry (Helmholtz IES)
+
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import coordinates.HoughPoint;
+import coordinates.ImagePoint;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.Line;
+import main.Extract_DNA_Fibers;
+import main.SegmentMerger;
+
+/**
+ * Test class for merging of duplicated segments.
+ * @author julien.pontabry
+ */
+public class SegmentMergerTest {
+	/**
+	 * Test method for {@link SegmentMerger#runWith(List, ImagePoint)} on simulated segments.
+	 */
+	@Test
+	public void testRunWith() {
+		List<Line> segments = new Vector<Line>();
+		
+		// Overlapping segments, and a reversed segment after a small gap
+		segments.add(new Line(10, 50, 80, 52));
+		segments.add(new Line(60, 51, 150, 53));
+		segments.add(new Line(190, 54, 170, 54));
+		
+		// Parallel segment
+		segments.add(new Line(10, 80, 150, 80));
+		
+		// Collinear segment after a large gap
+		segments.add(new Line(250, 56, 300, 57));
+		
+		SegmentMerger merger = new SegmentMerger(2.5, 5.0, 30.0);
+		List<Line> mergedSegments = merger.runWith(segments, new ImagePoint(100, 100));
+		
+		assertEquals(2, merger.getNumberOfGroups());
+		assertEquals(3, mergedSegments.size());
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(10, 50, 190, 54), mergedSegments));
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(10, 80, 150, 80), mergedSegments));
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(250, 56, 300, 57), mergedSegments));
+		
+		// Unchanged segments are given by their input segment
+		int[] sources = merger.getSources();
+		assertEquals(mergedSegments.size(), sources.length);
+		
+		for (int i = 0; i < sources.length; i++) {
+			Line segment = mergedSegments.get(i);
+			
+			if (segment.y1 == 50)
+				assertEquals(-1, sources[i]);
+			else
+				assertEquals(segment.y1 == 80 ? 3 : 4, sources[i]);
+		}
+		
+		// Larger gap
+		merger.setMaxGap(100.0);
+		mergedSegments = merger.runWith(segments, new ImagePoint(100, 100));
+		
+		assertEquals(2, mergedSegments.size());
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(10, 50, 300, 57), mergedSegments));
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(10, 80, 150, 80), mergedSegments));
+		
+		// No segments
+		assertTrue(merger.runWith(new Vector<Line>(), new ImagePoint(100, 100)).isEmpty());
+		assertEquals(0, merger.getNumberOfGroups());
+	}
+	
+	/**
+	 * Test method for {@link SegmentMerger#runWith(List, ImagePoint)} on both sides of the angular range.
+	 */
+	@Test
+	public void testRunWithPeriodic() {
+		List<Line> segments = new Vector<Line>();
+		
+		// Almost horizontal segments, with lines on each side of the angular range
+		segments.add(new Line(0, 0, 100, 1));
+		segments.add(new Line(50, 1, 200, -1));
+		
+		SegmentMerger merger = new SegmentMerger(2.5, 5.0, 30.0);
+		List<Line> mergedSegments = merger.runWith(segments, new ImagePoint(100, 0));
+		
+		assertEquals(1, merger.getNumberOfGroups());
+		assertEquals(1, mergedSegments.size());
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(200, -1, 0, 0), mergedSegments));
+	}
+	
+	/**
+	 * Test method for {@link SegmentMerger#runWith(List, ImagePoint)} on close parallel segments.
+	 */
+	@Test
+	public void testRunWithParallel() {
+		List<Line> segments = new Vector<Line>();
+		
+		// Parallel segments, each one within tolerance of the next one only
+		segments.add(new Line(0, 100, 200, 100));
+		segments.add(new Line(0, 104, 180, 104));
+		segments.add(new Line(0, 108, 160, 108));
+		segments.add(new Line(0, 112, 140, 112));
+		
+		SegmentMerger merger = new SegmentMerger(2.5, 5.0, 30.0);
+		List<Line> mergedSegments = merger.runWith(segments, new ImagePoint(100, 100));
+		
+		// The segments are compared to the line of their group, so they are not chained
+		assertEquals(2, merger.getNumberOfGroups());
+		assertEquals(2, mergedSegments.size());
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(0, 100, 200, 100), mergedSegments));
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(0, 108, 160, 108), mergedSegments));
+	}
+	
+	/**
+	 * Test method for {@link SegmentMerger#runWith(List, ImagePoint)} on tilted segments far from the origin.
+	 */
+	@Test
+	public void testRunWithFarFromOrigin() {
+		List<Line> segments = new Vector<Line>();
+		
+		// Slightly tilted duplicates, whose lines are far apart on second axis of Hough space
+		segments.add(new Line(1000, 0, 1400, 0));
+		segments.add(new Line(1000, 1, 1200, 4));
+		segments.add(new Line(1398, 2, 1100, -1));
+		
+		// Parallel segment
+		segments.add(new Line(1000, 20, 1400, 20));
+		
+		SegmentMerger merger = new SegmentMerger(2.5, 5.0, 30.0);
+		List<Line> mergedSegments = merger.runWith(segments, new ImagePoint(0, 0));
+		
+		assertEquals(2, merger.getNumberOfGroups());
+		assertEquals(2, mergedSegments.size());
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(1000, 0, 1400, 0), mergedSegments));
+		assertTrue(Extract_DNA_FibersTest.containsLineRoi(new Line(1000, 20, 1400, 20), mergedSegments));
+		
+		// Same segments on the other side of the origin
+		List<Line> mirroredSegments = new Vector<Line>();
+		
+		for (Line segment : segments)
+			mirroredSegments.add(new Line(-segment.x1, -segment.y1, -segment.x2, -segment.y2));
+		
+		assertEquals(2, merger.runWith(mirroredSegments, new ImagePoint(0, 0)).size());
+		assertEquals(2, merger.getNumberOfGroups());
+	}
+	
+	/**
+	 * Test method for {@link SegmentMerger#runWith(List, ImagePoint)} on the segments of close modes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithDuplicates() throws Exception {
+		ImagePlus             skeletons = IJ.openImage(Extract_DNA_FibersTest.testpath + "example_skeletons.zip");
+		List<HoughPoint> selectedPoints = CsvManager.readHoughPoints(Extract_DNA_FibersTest.testpath+"selected_points.csv", ",");
+		skeletons.setRoi(0, 0, skeletons.getWidth(), skeletons.getHeight());
+		ImagePoint origin = ImagePoint.getCenterPointOfImage(skeletons);
+		
+		// Duplicate each selected point with a slightly shifted copy
+		List<HoughPoint> duplicatedPoints = new Vector<HoughPoint>();
+		
+		for (HoughPoint p : selectedPoints) {
+			duplicatedPoints.add(p);
+			duplicatedPoints.add(new HoughPoint(p.theta + 0.5*Math.PI/180.0, p.rho + 1.0));
+		}
+		
+		List<Line>   segments = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), selectedPoints, 50, 30, 2.0);
+		List<Line> duplicates = Extract_DNA_Fibers.buildSegments(skeletons, skeletons.getRoi(), duplicatedPoints, 50, 30, 2.0);
+		
+		SegmentMerger merger = new SegmentMerger(2.5, 5.0, 50.0);
+		List<Line>   mergedSegments = merger.runWith(segments, origin);
+		List<Line> mergedDuplicates = merger.runWith(duplicates, origin);
+		
+		// Distinct segments are kept
+		assertEquals(segments.size(), mergedSegments.size());
+		
+		for (Line segment : segments)
+			assertTrue("Expected to find <"+segment+"> in list", Extract_DNA_FibersTest.containsLineRoi(segment, mergedSegments)
+					|| Extract_DNA_FibersTest.containsLineRoi(new Line(segment.x2, segment.y2, segment.x1, segment.y1), mergedSegments));
+		
+		// Duplicates are merged (and merging again does not change anything)
+		assertTrue(mergedDuplicates.size() < segments.size() + segments.size()/2);
+		assertEquals(mergedDuplicates.size(), merger.runWith(mergedDuplicates, origin).size());
+	}
+}